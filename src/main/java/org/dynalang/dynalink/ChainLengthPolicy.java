@@ -0,0 +1,80 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink;
+
+/**
+ * Interface for objects that determine the maximum length of the chain of linked method handles in a
+ * {@link ChainedCallSite}, allowing the length to adapt to the linkage history of each individual call site. Typical
+ * usage is for implementing {@link DynamicLinkerFactory#setChainLengthPolicy(ChainLengthPolicy) chain length
+ * policies} of dynamic linkers.
+ *
+ * @author Attila Szegedi
+ */
+public interface ChainLengthPolicy {
+    /**
+     * Returns the maximum chain length for a call site that was just linked for the first time or was reset.
+     * @param descriptor the descriptor of the call site.
+     * @return the initial maximum length of the chain. Must be at least 1.
+     */
+    public int getInitialMaxChainLength(CallSiteDescriptor descriptor);
+
+    /**
+     * Returns the maximum chain length for a call site that needs to link a new method handle while its chain is
+     * already at its current maximum length. Returning a value greater than the current maximum grows the chain and
+     * avoids throwing away previously linked method handles.
+     * @param descriptor the descriptor of the call site.
+     * @param linkCount the number of times the call site has been linked so far, including the current linking.
+     * @param maxChainLength the current maximum length of the chain.
+     * @return the new maximum length of the chain. Must be at least 1.
+     */
+    public int getMaxChainLength(CallSiteDescriptor descriptor, int linkCount, int maxChainLength);
+}
@@ -53,8 +53,13 @@ package org.dynalang.dynalink;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 import org.dynalang.dynalink.linker.GuardedInvocation;
 import org.dynalang.dynalink.support.AbstractRelinkableCallSite;
@@ -64,20 +69,42 @@ import org.dynalang.dynalink.support.Lookup;
  * A relinkable call site that maintains a chain of linked method handles. In the default implementation, up to 8 method
  * handles can be chained, cascading from one to the other through linkage composition produced by
  * {@link GuardedInvocation#compose(MethodHandle, MethodHandle, MethodHandle)}. When this call site has to link a new
- * method handle and the length of the chain is already at the maximum, it will throw away the oldest method handle.
+ * method handle and the length of the chain is already at the maximum, it will throw away the oldest method handle,
+ * unless {@link #isMegamorphicDispatchEnabled() megamorphic dispatch} is enabled, in which case it will switch to a
+ * dispatch table indexed by the class of the receiver (the first argument) instead. In megamorphic mode, every receiver
+ * class has its own chain of linked method handles that is filled lazily through the linker, and the target of the
+ * call site itself is no longer changed on relinking.
  * Switchpoint-invalidated handles in the chain are removed eagerly (on each linking request, and whenever a
  * switchpoint-invalidated method handle is traversed during invocation). Catch-guarded handles are removed
  * on first encountered exception. The reasoning is that exceptions are expected to be, well, exceptional, so if an
  * invocation is guarded with a catch, it is rather opportunistic, and if an exception occurs the linkers should produce
- * a non-opportunistic, exception-free linkage instead so exceptions will no longer occur. There is currently no profiling
- * attached to the handles in the chain, so they are never reordered based on hit frequency; the most recently linked method
- * handle is always at the start of the chain.
+ * a non-opportunistic, exception-free linkage instead so exceptions will no longer occur. By default, there is no
+ * profiling attached to the handles in the chain, so they are never reordered based on hit frequency; the most recently
+ * linked method handle is always at the start of the chain. If a {@link #getProfilingThreshold() profiling threshold}
+ * is set, hits are counted for every handle in the chain, and the chain is reordered so that the most frequently hit
+ * handles are tested first (and the least frequently hit ones are thrown away first).
  */
 public class ChainedCallSite extends AbstractRelinkableCallSite {
     private static final MethodHandle PRUNE_CATCHES = findPruneMethod("pruneCatches");
     private static final MethodHandle PRUNE_SWITCHPOINTS= findPruneMethod("pruneSwitchpoints");
+    private static final MethodHandle GET_MEGAMORPHIC_TARGET = Lookup.findOwnSpecial(MethodHandles.lookup(),
+            "getMegamorphicTarget", MethodHandle.class, Object.class);
+    private static final MethodHandle COUNT_HIT = Lookup.findOwnStatic(MethodHandles.lookup(), "countHit", void.class,
+            HitCounter.class);
+    private static final MethodHandle MEGAMORPHIC_MISS = Lookup.findOwnStatic(MethodHandles.lookup(), "megamorphicMiss",
+            MethodHandle.class, ChainedCallSite.class, Object.class);
+
+    // Marker value of the invocations list signifying that the call site switched to megamorphic dispatch. It is never
+    // modified, as lists are always cloned before being modified.
+    private static final LinkedList<GuardedInvocation> MEGAMORPHIC = new LinkedList<>();
 
     private final AtomicReference<LinkedList<GuardedInvocation>> invocations = new AtomicReference<>();
+    private volatile Map<GuardedInvocation, HitCounter> hitCounters = Collections.emptyMap();
+    private volatile MethodHandle chainRelink;
+    private volatile MegamorphicDispatchTable megamorphicTable;
+    private volatile ChainLengthPolicy chainLengthPolicy;
+    private volatile int maxChainLength;
+    private volatile int linkCount;
 
     /**
      * Creates a new chained call site.
@@ -87,9 +114,34 @@ public class ChainedCallSite extends AbstractRelinkableCallSite {
         super(descriptor);
     }
 
+    /**
+     * Creates a new chained call site with an adaptive maximum chain length.
+     * @param descriptor the descriptor for the call site.
+     * @param chainLengthPolicy the policy determining the maximum length of the chain of this call site. If null, the
+     * policy of the {@link DynamicLinker} linking the call site is used; if that is null too, the chain has the fixed
+     * maximum length returned by {@link #getMaxChainLength()}.
+     */
+    public ChainedCallSite(final CallSiteDescriptor descriptor, final ChainLengthPolicy chainLengthPolicy) {
+        super(descriptor);
+        this.chainLengthPolicy = chainLengthPolicy;
+    }
+
+    /**
+     * Sets the chain length policy of the linking dynamic linker, unless this call site already has its own.
+     * @param policy the chain length policy of the dynamic linker.
+     */
+    void setDefaultChainLengthPolicy(final ChainLengthPolicy policy) {
+        if(chainLengthPolicy == null) {
+            chainLengthPolicy = policy;
+        }
+    }
+
     /**
      * The maximum number of method handles in the chain. Defaults to 8. You can override it in a subclass if you need
-     * to change the value. If your override returns a value less than 1, the code will break.
+     * to change the value. If your override returns a value less than 1, the code will break. If the call site has a
+     * {@link ChainLengthPolicy}, the maximum length of its main chain is determined by the policy instead. When
+     * megamorphic dispatch is enabled, it also limits the length of the chain maintained for every individual receiver
+     * class.
      * @return the maximum number of method handles in the chain.
      */
     @SuppressWarnings("static-method")
@@ -97,18 +149,98 @@ public class ChainedCallSite extends AbstractRelinkableCallSite {
         return 8;
     }
 
+    /**
+     * Whether this call site switches to megamorphic dispatch when it needs to link a new method handle while its chain
+     * is already at its maximum length. When it returns false (the default), the oldest method handle in the chain is
+     * thrown away instead. You can override it in a subclass if your call sites are expected to see a large number of
+     * receiver classes. Megamorphic dispatch is never used for call sites without parameters.
+     * @return true if the call site should switch to megamorphic dispatch when its chain overflows.
+     */
+    @SuppressWarnings("static-method")
+    protected boolean isMegamorphicDispatchEnabled() {
+        return false;
+    }
+
+    /**
+     * The number of hits on a single method handle in the chain after which the chain is reordered so that the method
+     * handles with most hits since the last reordering are tested first. Defaults to 0, meaning no hits are counted
+     * and the most recently linked method handle is always tested first. You can override it in a subclass to enable
+     * profile-guided ordering of the chain; note that counting hits has a small cost on every invocation.
+     * @return the number of hits on a single method handle that triggers reordering of the chain, or 0 to disable
+     * profiling.
+     */
+    @SuppressWarnings("static-method")
+    protected int getProfilingThreshold() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of method handles currently in the chain. It is zero if the call site wasn't linked yet or has
+     * switched to megamorphic dispatch.
+     * @return the number of method handles currently in the chain.
+     */
+    public int getChainLength() {
+        final LinkedList<GuardedInvocation> currentInvocations = invocations.get();
+        return currentInvocations == null ? 0 : currentInvocations.size();
+    }
+
+    /**
+     * Returns true if this call site has switched to megamorphic dispatch.
+     * @return true if this call site has switched to megamorphic dispatch.
+     */
+    public boolean isMegamorphic() {
+        return invocations.get() == MEGAMORPHIC;
+    }
+
+    /**
+     * Returns the current maximum number of method handles in the chain. Unless the call site has a
+     * {@link ChainLengthPolicy}, this is the same as {@link #getMaxChainLength()}.
+     * @return the current maximum number of method handles in the chain.
+     */
+    public int getCurrentMaxChainLength() {
+        final int currentMaxChainLength = maxChainLength;
+        return currentMaxChainLength > 0 ? currentMaxChainLength : getMaxChainLength();
+    }
+
     @Override
     public void relink(final GuardedInvocation guardedInvocation, final MethodHandle fallback) {
-        relinkInternal(guardedInvocation, fallback, false, false);
+        ++linkCount;
+        relinkInternal(guardedInvocation, fallback, false, false, null);
+    }
+
+    /**
+     * Relinks the call site for the receiver (the first argument) the invocation was linked for. Invoked by the
+     * {@link DynamicLinker} instead of {@link #relink(GuardedInvocation, MethodHandle)} when the call site uses
+     * megamorphic dispatch, so that the invocation can be added to the chain of the receiver's class.
+     * @param guardedInvocation the guarded invocation
+     * @param fallback the fallback method handle
+     * @param receiver the receiver the invocation was linked for
+     */
+    void relink(final GuardedInvocation guardedInvocation, final MethodHandle fallback, final Object receiver) {
+        ++linkCount;
+        relinkInternal(guardedInvocation, fallback, false, false, getReceiverClass(receiver));
     }
 
     @Override
     public void resetAndRelink(final GuardedInvocation guardedInvocation, final MethodHandle fallback) {
-        relinkInternal(guardedInvocation, fallback, true, false);
+        ++linkCount;
+        relinkInternal(guardedInvocation, fallback, true, false, null);
     }
 
-    private MethodHandle relinkInternal(final GuardedInvocation invocation, final MethodHandle relink, final boolean reset, final boolean removeCatches) {
+    private MethodHandle relinkInternal(final GuardedInvocation invocation, final MethodHandle relink, final boolean reset,
+            final boolean removeCatches, final Class<?> receiverClass) {
         final LinkedList<GuardedInvocation> currentInvocations = invocations.get();
+        if(currentInvocations == MEGAMORPHIC && !reset) {
+            // In megamorphic mode the target of the call site is the dispatcher and never changes; new invocations are
+            // only added to the chain for the class of the receiver that caused the miss.
+            final MegamorphicDispatchTable table = megamorphicTable;
+            table.relink = relink;
+            if(invocation != null && receiverClass != null) {
+                table.get(receiverClass).relink(invocation, table.miss, getMaxChainLength());
+            }
+            return getTarget();
+        }
+
         @SuppressWarnings({ "unchecked", "rawtypes" })
         final LinkedList<GuardedInvocation> newInvocations =
             currentInvocations == null || reset ? new LinkedList<>() : (LinkedList)currentInvocations.clone();
@@ -125,31 +257,173 @@ public class ChainedCallSite extends AbstractRelinkableCallSite {
         // prune() is allowed to invoke this method with invocation == null meaning we're just pruning the chain and not
         // adding any new invocations to it.
         if(invocation != null) {
-            // Remove oldest entry if we're at max length
-            if(newInvocations.size() == getMaxChainLength()) {
-                newInvocations.removeFirst();
+            final int max = getMaxChainLength(newInvocations.size(), currentInvocations == null || reset);
+            if(newInvocations.size() >= max) {
+                if(isMegamorphicDispatchEnabled() && type().parameterCount() > 0) {
+                    return switchToMegamorphic(currentInvocations, relink);
+                }
+                // Remove oldest entries if we're at max length
+                while(!newInvocations.isEmpty() && newInvocations.size() >= max) {
+                    newInvocations.removeFirst();
+                }
             }
             newInvocations.addLast(invocation);
         }
 
+        // Fold the new chain
+        final Map<GuardedInvocation, HitCounter> newHitCounters = new IdentityHashMap<>();
+        final MethodHandle target = foldChain(newInvocations, relink, newHitCounters);
+
+        // If nobody else updated the call site while we were rebuilding the chain, set the target to our chain. In case
+        // we lost the race for multithreaded update, just do nothing. Either the other thread installed the same thing
+        // we wanted to install, or otherwise, we'll be asked to relink again.
+        if(invocations.compareAndSet(currentInvocations, newInvocations)) {
+            hitCounters = newHitCounters;
+            chainRelink = relink;
+            setTarget(target);
+        }
+        return target;
+    }
+
+    private MethodHandle foldChain(final LinkedList<GuardedInvocation> chain, final MethodHandle relink,
+            final Map<GuardedInvocation, HitCounter> newHitCounters) {
         // prune-and-invoke is used as the fallback for invalidated switchpoints. If a switchpoint gets invalidated, we
         // rebuild the chain and get rid of all invalidated switchpoints instead of letting them linger.
         final MethodHandle pruneAndInvokeSwitchPoints = makePruneAndInvokeMethod(relink, getPruneSwitchpoints());
         final MethodHandle pruneAndInvokeCatches      = makePruneAndInvokeMethod(relink, getPruneCatches());
 
-        // Fold the new chain
+        final int profilingThreshold = getProfilingThreshold();
+        final Map<GuardedInvocation, HitCounter> currentHitCounters = hitCounters;
         MethodHandle target = relink;
-        for(final GuardedInvocation inv: newInvocations) {
-            target = inv.compose(target, pruneAndInvokeSwitchPoints, pruneAndInvokeCatches);
+        for(final GuardedInvocation inv: chain) {
+            final GuardedInvocation composedInv;
+            if(profilingThreshold > 0) {
+                // Retain the counts for invocations that were already in the chain
+                HitCounter counter = currentHitCounters.get(inv);
+                if(counter == null) {
+                    counter = new HitCounter(this, profilingThreshold);
+                }
+                newHitCounters.put(inv, counter);
+                final MethodHandle invocation = inv.getInvocation();
+                composedInv = inv.replaceMethods(MethodHandles.foldArguments(invocation, MethodHandles.dropArguments(
+                        COUNT_HIT.bindTo(counter), 0, invocation.type().parameterList())), inv.getGuard());
+            } else {
+                composedInv = inv;
+            }
+            target = composedInv.compose(target, pruneAndInvokeSwitchPoints, pruneAndInvokeCatches);
+        }
+        return target;
+    }
+
+    /**
+     * Rebuilds the chain so that the invocations with the most hits since the last reordering are tested first.
+     */
+    private void reorderChain() {
+        final LinkedList<GuardedInvocation> currentInvocations = invocations.get();
+        if(currentInvocations == null || currentInvocations == MEGAMORPHIC) {
+            return;
         }
+        final Map<GuardedInvocation, HitCounter> currentHitCounters = hitCounters;
+        @SuppressWarnings("unchecked")
+        final LinkedList<GuardedInvocation> newInvocations = (LinkedList<GuardedInvocation>)currentInvocations.clone();
+        // The last invocation in the list is the outermost one in the folded chain, so sort in ascending order of hits.
+        // The sort is stable, so invocations with equal hits retain their relative order.
+        Collections.sort(newInvocations, new Comparator<GuardedInvocation>() {
+            @Override
+            public int compare(final GuardedInvocation inv1, final GuardedInvocation inv2) {
+                return Integer.compare(getHits(inv1), getHits(inv2));
+            }
 
-        // If nobody else updated the call site while we were rebuilding the chain, set the target to our chain. In case
-        // we lost the race for multithreaded update, just do nothing. Either the other thread installed the same thing
-        // we wanted to install, or otherwise, we'll be asked to relink again.
+            private int getHits(final GuardedInvocation inv) {
+                final HitCounter counter = currentHitCounters.get(inv);
+                return counter == null ? 0 : counter.hits;
+            }
+        });
+        for(final HitCounter counter: currentHitCounters.values()) {
+            counter.hits = 0;
+        }
+        if(newInvocations.equals(currentInvocations)) {
+            // Already in the right order, nothing to do.
+            return;
+        }
+        final Map<GuardedInvocation, HitCounter> newHitCounters = new IdentityHashMap<>();
+        final MethodHandle relink = chainRelink;
+        final MethodHandle target = foldChain(newInvocations, relink, newHitCounters);
         if(invocations.compareAndSet(currentInvocations, newInvocations)) {
+            hitCounters = newHitCounters;
             setTarget(target);
         }
-        return target;
+    }
+
+    @SuppressWarnings("unused")
+    private static void countHit(final HitCounter counter) {
+        // Not atomic; the counts are only used as a heuristic, so lost updates don't matter.
+        if(++counter.hits == counter.threshold) {
+            counter.callSite.reorderChain();
+        }
+    }
+
+    private int getMaxChainLength(final int chainLength, final boolean initial) {
+        final ChainLengthPolicy policy = chainLengthPolicy;
+        if(policy == null) {
+            return getMaxChainLength();
+        }
+        final CallSiteDescriptor descriptor = getDescriptor();
+        int max = maxChainLength;
+        if(initial || max == 0) {
+            max = policy.getInitialMaxChainLength(descriptor);
+        } else if(chainLength >= max) {
+            // Only consult the policy when it would otherwise be necessary to throw away a linked method handle.
+            max = policy.getMaxChainLength(descriptor, linkCount, max);
+        }
+        maxChainLength = max;
+        return max;
+    }
+
+    private MethodHandle switchToMegamorphic(final LinkedList<GuardedInvocation> currentInvocations, final MethodHandle relink) {
+        final MethodType type = type();
+        final MethodType receiverType = MethodType.methodType(MethodHandle.class, type.parameterType(0));
+        final MethodType tailType = type.dropParameterTypes(0, 1);
+
+        // The miss handle is invoked with the call site as its additional first argument, so that the dispatch table
+        // (whose values are attached to the receiver classes) never strongly references the call site itself.
+        final MethodHandle missSelector = MethodHandles.dropArguments(MEGAMORPHIC_MISS.asType(
+                receiverType.insertParameterTypes(0, ChainedCallSite.class)), 2, tailType.parameterList());
+        final MethodHandle miss = MethodHandles.foldArguments(MethodHandles.dropArguments(
+                MethodHandles.exactInvoker(type), 1, ChainedCallSite.class), missSelector);
+
+        final MegamorphicDispatchTable table = new MegamorphicDispatchTable(miss);
+        table.relink = relink;
+
+        // The dispatcher looks up the method handle for the receiver class and invokes it with the call site prepended
+        // to the arguments.
+        final MethodHandle targetSelector = MethodHandles.dropArguments(GET_MEGAMORPHIC_TARGET.bindTo(this).asType(
+                receiverType), 1, tailType.parameterList());
+        final MethodHandle dispatcher = MethodHandles.foldArguments(MethodHandles.insertArguments(
+                MethodHandles.exactInvoker(miss.type()), 1, this), targetSelector);
+
+        megamorphicTable = table;
+        if(invocations.compareAndSet(currentInvocations, MEGAMORPHIC)) {
+            setTarget(dispatcher);
+        }
+        return dispatcher;
+    }
+
+    @SuppressWarnings("unused")
+    private MethodHandle getMegamorphicTarget(final Object receiver) {
+        return megamorphicTable.get(getReceiverClass(receiver)).target;
+    }
+
+    @SuppressWarnings("unused")
+    private static MethodHandle megamorphicMiss(final ChainedCallSite callSite, final Object receiver) {
+        // The linker passes the receiver back to relink(GuardedInvocation, MethodHandle, Object) along with the
+        // produced invocation, so it can be added to the chain of the receiver's class.
+        return callSite.megamorphicTable.relink;
+    }
+
+    private static Class<?> getReceiverClass(final Object receiver) {
+        // No object can be of class void, so we can use it as the key for null receivers
+        return receiver == null ? void.class : receiver.getClass();
     }
 
     /**
@@ -194,10 +468,69 @@ public class ChainedCallSite extends AbstractRelinkableCallSite {
     }
 
     private MethodHandle prune(final MethodHandle relink, final boolean catches) {
-        return relinkInternal(null, relink, false, catches);
+        return relinkInternal(null, relink, false, catches, null);
     }
 
     private static MethodHandle findPruneMethod(final String name) {
         return Lookup.findOwnSpecial(MethodHandles.lookup(), name, MethodHandle.class, MethodHandle.class);
     }
+
+    private static class HitCounter {
+        final ChainedCallSite callSite;
+        final int threshold;
+        int hits;
+
+        HitCounter(final ChainedCallSite callSite, final int threshold) {
+            this.callSite = callSite;
+            this.threshold = threshold;
+        }
+    }
+
+    // Using a separate static class so there's no strong reference from the class values back to the call site.
+    private static class MegamorphicDispatchTable extends ClassValue<MegamorphicDispatchEntry> {
+        final MethodHandle miss;
+        volatile MethodHandle relink;
+
+        MegamorphicDispatchTable(final MethodHandle miss) {
+            this.miss = miss;
+        }
+
+        @Override
+        protected MegamorphicDispatchEntry computeValue(final Class<?> receiverClass) {
+            return new MegamorphicDispatchEntry(miss);
+        }
+    }
+
+    private static class MegamorphicDispatchEntry {
+        private final AtomicReference<LinkedList<GuardedInvocation>> invocations =
+                new AtomicReference<>(new LinkedList<GuardedInvocation>());
+        volatile MethodHandle target;
+
+        MegamorphicDispatchEntry(final MethodHandle miss) {
+            target = miss;
+        }
+
+        void relink(final GuardedInvocation invocation, final MethodHandle miss, final int maxChainLength) {
+            final LinkedList<GuardedInvocation> currentInvocations = invocations.get();
+            final LinkedList<GuardedInvocation> newInvocations = new LinkedList<>();
+            for(final GuardedInvocation inv: currentInvocations) {
+                if(!inv.hasBeenInvalidated()) {
+                    newInvocations.add(inv);
+                }
+            }
+            if(newInvocations.size() == maxChainLength) {
+                newInvocations.removeFirst();
+            }
+            newInvocations.addLast(invocation.dropArguments(0, ChainedCallSite.class));
+
+            // Every kind of fallback is a miss that relinks for this receiver class
+            MethodHandle newTarget = miss;
+            for(final GuardedInvocation inv: newInvocations) {
+                newTarget = inv.compose(newTarget);
+            }
+            if(invocations.compareAndSet(currentInvocations, newInvocations)) {
+                target = newTarget;
+            }
+        }
+    }
 }
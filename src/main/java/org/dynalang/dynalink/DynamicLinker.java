@@ -51,17 +51,33 @@
 
 package org.dynalang.dynalink;
 
+import java.lang.invoke.CallSite;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.invoke.MutableCallSite;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 import org.dynalang.dynalink.linker.GuardedInvocation;
 import org.dynalang.dynalink.linker.GuardingDynamicLinker;
 import org.dynalang.dynalink.linker.LinkRequest;
 import org.dynalang.dynalink.linker.LinkerServices;
 import org.dynalang.dynalink.support.CallSiteDescriptorFactory;
+import org.dynalang.dynalink.support.CallSiteRegistry;
+import org.dynalang.dynalink.support.GuardCounter;
+import org.dynalang.dynalink.support.LinkProfile;
+import org.dynalang.dynalink.support.LinkerCostAccounting;
 import org.dynalang.dynalink.support.LinkRequestImpl;
+import org.dynalang.dynalink.support.LinkerServicesImpl;
 import org.dynalang.dynalink.support.Lookup;
 import org.dynalang.dynalink.support.RuntimeContextLinkRequestImpl;
 
@@ -108,6 +124,9 @@ import org.dynalang.dynalink.support.RuntimeContextLinkRequestImpl;
  * @author Attila Szegedi
  */
 public class DynamicLinker {
+    private static final Logger LOG = Logger.getLogger(DynamicLinker.class.getName(),
+            "org.dynalang.dynalink.support.messages");
+
     private static final String CLASS_NAME = DynamicLinker.class.getName();
     private static final String RELINK_METHOD_NAME = "relink";
 
@@ -118,7 +137,18 @@ public class DynamicLinker {
     private final GuardedInvocationFilter prelinkFilter;
     private final int runtimeContextArgCount;
     private final boolean syncOnRelink;
+    private final RelinkSyncBatch syncBatch;
     private final int unstableRelinkThreshold;
+    private final ChainLengthPolicy chainLengthPolicy;
+    private final long singleFlightRelinkTimeout;
+    private final ConcurrentMap<RelinkableCallSite, PendingRelink> pendingRelinks;
+    private final Executor asyncLinkExecutor;
+    private final GuardingDynamicLinker interimLinker;
+    private final ConcurrentMap<RelinkableCallSite, Boolean> backgroundLinks;
+    private final CallSiteRegistry callSiteRegistry;
+    private final boolean guardInstrumentationEnabled;
+    private final LinkProfile linkProfile;
+    private final LinkListener linkListener;
 
     /**
      * Creates a new dynamic linker.
@@ -126,20 +156,52 @@ public class DynamicLinker {
      * @param linkerServices the linkerServices used by the linker, created by the factory.
      * @param prelinkFilter see {@link DynamicLinkerFactory#setPrelinkFilter(GuardedInvocationFilter)}
      * @param runtimeContextArgCount see {@link DynamicLinkerFactory#setRuntimeContextArgCount(int)}
+     * @param chainLengthPolicy see {@link DynamicLinkerFactory#setChainLengthPolicy(ChainLengthPolicy)}
+     * @param singleFlightRelinkTimeout see {@link DynamicLinkerFactory#setSingleFlightRelinkTimeout(long)}
+     * @param syncBatchSize see {@link DynamicLinkerFactory#setSyncOnRelinkBatching(int, long)}
+     * @param syncBatchDelay see {@link DynamicLinkerFactory#setSyncOnRelinkBatching(int, long)}
+     * @param syncBatchScheduler see
+     * {@link DynamicLinkerFactory#setSyncOnRelinkBatching(int, long, java.util.concurrent.ScheduledExecutorService)}
+     * @param asyncLinkExecutor see {@link DynamicLinkerFactory#setAsynchronousLinking(Executor, GuardingDynamicLinker)}
+     * @param interimLinker see {@link DynamicLinkerFactory#setAsynchronousLinking(Executor, GuardingDynamicLinker)}
+     * @param callSiteRegistryEnabled see {@link DynamicLinkerFactory#setCallSiteRegistryEnabled(boolean)}
+     * @param guardInstrumentationEnabled see {@link DynamicLinkerFactory#setGuardInstrumentationEnabled(boolean)}
+     * @param linkProfile see {@link DynamicLinkerFactory#setLinkProfile(LinkProfile, Executor)}
+     * @param linkListener see {@link DynamicLinkerFactory#setLinkListener(LinkListener)}
      */
     DynamicLinker(final LinkerServices linkerServices, final GuardedInvocationFilter prelinkFilter, final int runtimeContextArgCount,
-            final boolean syncOnRelink, final int unstableRelinkThreshold) {
+            final boolean syncOnRelink, final int unstableRelinkThreshold, final ChainLengthPolicy chainLengthPolicy,
+            final long singleFlightRelinkTimeout, final int syncBatchSize, final long syncBatchDelay,
+            final ScheduledExecutorService syncBatchScheduler,
+            final Executor asyncLinkExecutor, final GuardingDynamicLinker interimLinker,
+            final boolean callSiteRegistryEnabled, final boolean guardInstrumentationEnabled,
+            final LinkProfile linkProfile, final LinkListener linkListener) {
         if(runtimeContextArgCount < 0) {
             throw new IllegalArgumentException("runtimeContextArgCount < 0");
         }
         if(unstableRelinkThreshold < 0) {
             throw new IllegalArgumentException("unstableRelinkThreshold < 0");
         }
+        if(singleFlightRelinkTimeout < 0) {
+            throw new IllegalArgumentException("singleFlightRelinkTimeout < 0");
+        }
         this.linkerServices = linkerServices;
         this.prelinkFilter = prelinkFilter;
         this.runtimeContextArgCount = runtimeContextArgCount;
         this.syncOnRelink = syncOnRelink;
+        this.syncBatch = syncOnRelink && syncBatchSize > 1 ? new RelinkSyncBatch(syncBatchSize, syncBatchDelay,
+                syncBatchScheduler) : null;
         this.unstableRelinkThreshold = unstableRelinkThreshold;
+        this.chainLengthPolicy = chainLengthPolicy;
+        this.singleFlightRelinkTimeout = singleFlightRelinkTimeout;
+        this.pendingRelinks = singleFlightRelinkTimeout > 0 ? new ConcurrentHashMap<RelinkableCallSite, PendingRelink>() : null;
+        this.asyncLinkExecutor = asyncLinkExecutor;
+        this.interimLinker = interimLinker;
+        this.backgroundLinks = asyncLinkExecutor != null ? new ConcurrentHashMap<RelinkableCallSite, Boolean>() : null;
+        this.callSiteRegistry = callSiteRegistryEnabled || guardInstrumentationEnabled ? new CallSiteRegistry() : null;
+        this.guardInstrumentationEnabled = guardInstrumentationEnabled;
+        this.linkProfile = linkProfile;
+        this.linkListener = linkListener;
     }
 
     /**
@@ -151,10 +213,83 @@ public class DynamicLinker {
      * @return the callSite, for easy call chaining.
      */
     public <T extends RelinkableCallSite> T link(final T callSite) {
+        if(chainLengthPolicy != null && callSite instanceof ChainedCallSite) {
+            ((ChainedCallSite)callSite).setDefaultChainLengthPolicy(chainLengthPolicy);
+        }
+        if(callSiteRegistry != null) {
+            callSiteRegistry.register(callSite);
+        }
         callSite.initialize(createRelinkAndInvokeMethod(callSite, 0));
         return callSite;
     }
 
+    /**
+     * Links an invokedynamic call site ahead of its first invocation. It does the same as
+     * {@link #link(RelinkableCallSite)}, and then links the call site once for every passed set of sample arguments,
+     * as if it had been invoked with them, installing the produced guarded invocations into the call site without
+     * invoking them. Language runtimes can use it to pre-link known hot call sites (even in parallel, as long as every
+     * call site is pre-linked by a single thread) during their startup, so that the first invocations of those call
+     * sites don't need to link them. Since linkers produce invocations based on the values of the arguments (most
+     * notably, the class of the receiver), the samples need to be objects representative of the actual arguments the
+     * call site will be invoked with, but they are never passed to the produced invocations. Pre-linking doesn't
+     * count towards the {@link DynamicLinkerFactory#setUnstableRelinkThreshold(int) unstable relink threshold}, so
+     * any number of samples can be passed without the call site becoming unstable; its first relink after
+     * pre-linking is counted as its second link, same as when it's relinked after its first invocation.
+     *
+     * @param callSite the call site to link.
+     * @param sampleArguments sets of sample arguments for the invocations of the call site. Each set must have as many
+     * elements as the call site type has parameters.
+     * @return the callSite, for easy call chaining.
+     * @throws IllegalArgumentException if a set of sample arguments has wrong number of elements.
+     * @throws Exception rethrows any exception thrown by the linkers
+     */
+    public <T extends RelinkableCallSite> T prelink(final T callSite, final Object[]... sampleArguments) throws Exception {
+        final int parameterCount = callSite.getDescriptor().getMethodType().parameterCount();
+        for(final Object[] arguments: sampleArguments) {
+            if(arguments.length != parameterCount) {
+                throw new IllegalArgumentException("Expected " + parameterCount + " sample arguments, got " +
+                        arguments.length);
+            }
+        }
+        link(callSite);
+        for(final Object[] arguments: sampleArguments) {
+            // Every sample is linked as if it was the first link of the call site
+            linkAndInstall(new Fallback(callSite, 0), arguments.clone());
+        }
+        return callSite;
+    }
+
+    /**
+     * Returns the registry of call sites linked by this linker.
+     * @return the registry of call sites linked by this linker, or null if it is not
+     * {@link DynamicLinkerFactory#setCallSiteRegistryEnabled(boolean) enabled}.
+     */
+    public CallSiteRegistry getCallSiteRegistry() {
+        return callSiteRegistry;
+    }
+
+    /**
+     * Returns the object recording the link costs of the component linkers of this linker.
+     * @return the object recording the link costs of the component linkers of this linker, or null if it is not
+     * {@link DynamicLinkerFactory#setLinkerCostAccountingEnabled(boolean) enabled}.
+     */
+    public LinkerCostAccounting getLinkerCostAccounting() {
+        return linkerServices instanceof LinkerServicesImpl ?
+                ((LinkerServicesImpl)linkerServices).getLinkerCostAccounting() : null;
+    }
+
+    /**
+     * Synchronizes all call sites relinked by this linker that are still waiting to be synchronized when
+     * {@link DynamicLinkerFactory#setSyncOnRelinkBatching(int, long) batched synchronization} is used. After this
+     * method returns, all other threads are guaranteed to observe the new targets of those call sites. It does nothing
+     * if batched synchronization is not used.
+     */
+    public void syncRelinkedCallSites() {
+        if(syncBatch != null) {
+            syncBatch.flush();
+        }
+    }
+
     /**
      * Returns the object representing the lower level linker services of this class that are normally exposed to
      * individual language-specific linkers. While as a user of this class you normally only care about the
@@ -167,52 +302,251 @@ public class DynamicLinker {
     }
 
     private static final MethodHandle RELINK = Lookup.findOwnSpecial(MethodHandles.lookup(), RELINK_METHOD_NAME,
-            MethodHandle.class, RelinkableCallSite.class, int.class, Object[].class);
+            MethodHandle.class, Fallback.class, Object[].class);
+
+    private static final int MAX_SPECIALIZED_RELINK_ARITY = 6;
+
+    // Argument collecting variants of RELINK for small arities, so they don't need to be created for every fallback.
+    private static final MethodHandle[] RELINK_BY_ARITY = createRelinkByArity();
+
+    private static MethodHandle[] createRelinkByArity() {
+        final MethodHandle[] relinkByArity = new MethodHandle[MAX_SPECIALIZED_RELINK_ARITY + 1];
+        for(int i = 0; i < relinkByArity.length; ++i) {
+            relinkByArity[i] = RELINK.asCollector(Object[].class, i);
+        }
+        return relinkByArity;
+    }
 
     private MethodHandle createRelinkAndInvokeMethod(final RelinkableCallSite callSite, final int relinkCount) {
-        // Make a bound MH of invoke() for this linker and call site
-        final MethodHandle boundRelinker = MethodHandles.insertArguments(RELINK, 0, this, callSite, Integer.valueOf(
-                relinkCount));
-        // Make a MH that gathers all arguments to the invocation into an Object[]
+        return createFallback(callSite, relinkCount).relinkAndInvoke;
+    }
+
+    private Fallback createFallback(final RelinkableCallSite callSite, final int relinkCount) {
+        final Fallback fallback = new Fallback(callSite, relinkCount);
         final MethodType type = callSite.getDescriptor().getMethodType();
-        final MethodHandle collectingRelinker = boundRelinker.asCollector(Object[].class, type.parameterCount());
-        return MethodHandles.foldArguments(MethodHandles.exactInvoker(type), collectingRelinker.asType(
+        final int parameterCount = type.parameterCount();
+        // Get a MH of relink() that gathers all arguments to the invocation into an Object[]...
+        final MethodHandle collectingRelinker = parameterCount <= MAX_SPECIALIZED_RELINK_ARITY ?
+                RELINK_BY_ARITY[parameterCount] : RELINK.asCollector(Object[].class, parameterCount);
+        // ... bind it to this linker and the fallback ...
+        final MethodHandle boundRelinker = MethodHandles.insertArguments(collectingRelinker, 0, this, fallback);
+        // ... and make it invoke the method handle it returns.
+        fallback.relinkAndInvoke = MethodHandles.foldArguments(MethodHandles.exactInvoker(type), boundRelinker.asType(
                 type.changeReturnType(MethodHandle.class)));
+        return fallback;
+    }
+
+    /**
+     * Returns the fallback for a call site being relinked with the specified relink count. If the relink count is the
+     * same as that of the current fallback of the call site, the current fallback is reused. This is always the case
+     * when unstable call site detection is disabled, and once a call site became unstable, so call sites that are
+     * relinked often don't create a new fallback for every relink.
+     * @param current the current fallback of the call site.
+     * @param relinkCount the relink count for the new fallback.
+     * @return the fallback for the relink count.
+     */
+    private MethodHandle getRelinkAndInvokeMethod(final Fallback current, final int relinkCount) {
+        if(current.relinkCount == relinkCount) {
+            // Can be null for fallbacks created for prelinking only.
+            final MethodHandle relinkAndInvoke = current.relinkAndInvoke;
+            if(relinkAndInvoke != null) {
+                return relinkAndInvoke;
+            }
+        }
+        return createRelinkAndInvokeMethod(current.callSite, relinkCount);
     }
 
     /**
      * Relinks a call site conforming to the invocation arguments.
      *
-     * @param callSite the call site itself
+     * @param fallback the fallback of the call site that was invoked
      * @param arguments arguments to the invocation
      * @return return the method handle for the invocation
      * @throws Exception rethrows any exception thrown by the linkers
      */
     @SuppressWarnings("unused")
-    private MethodHandle relink(final RelinkableCallSite callSite, final int relinkCount, final Object... arguments) throws Exception {
-        final CallSiteDescriptor callSiteDescriptor = callSite.getDescriptor();
-        final boolean unstableDetectionEnabled = unstableRelinkThreshold > 0;
-        final boolean callSiteUnstable = unstableDetectionEnabled && relinkCount >= unstableRelinkThreshold;
-        final LinkRequest linkRequest =
-                runtimeContextArgCount == 0 ?
-                        new LinkRequestImpl(callSiteDescriptor, callSite, relinkCount, callSiteUnstable, arguments) :
-                        new RuntimeContextLinkRequestImpl(callSiteDescriptor, callSite, relinkCount, callSiteUnstable, arguments, runtimeContextArgCount);
+    private MethodHandle relink(final Fallback fallback, final Object... arguments) throws Exception {
+        if(asyncLinkExecutor != null) {
+            final MethodHandle interimInvocation = linkInBackground(fallback, arguments);
+            if(interimInvocation != null) {
+                return interimInvocation;
+            }
+        }
+        final RelinkableCallSite callSite = fallback.callSite;
+        if(pendingRelinks == null) {
+            return linkAndInstall(fallback, arguments);
+        }
+        final PendingRelink pendingRelink = new PendingRelink();
+        final PendingRelink existingRelink = pendingRelinks.putIfAbsent(callSite, pendingRelink);
+        if(existingRelink == null) {
+            try {
+                return linkAndInstall(fallback, arguments);
+            } finally {
+                pendingRelinks.remove(callSite, pendingRelink);
+                pendingRelink.done.countDown();
+            }
+        }
+        // Another thread is already relinking this call site. Wait for it to finish (unless it's the current thread,
+        // relinking reentrantly) and invoke the call site's new target; if the new target can't handle these arguments
+        // either, it'll fall back to relinking again. If the wait times out, relink on this thread too.
+        if(existingRelink.thread != Thread.currentThread() && existingRelink.await(singleFlightRelinkTimeout)) {
+            return ((CallSite)callSite).getTarget();
+        }
+        return linkAndInstall(fallback, arguments);
+    }
 
-        GuardedInvocation guardedInvocation = linkerServices.getGuardedInvocation(linkRequest);
+    /**
+     * Links the call site for the invocation arguments and installs the resulting invocation into it.
+     *
+     * @param fallback the fallback of the call site that was invoked
+     * @param arguments arguments to the invocation
+     * @return return the method handle for the invocation
+     * @throws Exception rethrows any exception thrown by the linkers
+     */
+    private MethodHandle linkAndInstall(final Fallback fallback, final Object... arguments) throws Exception {
+        final RelinkableCallSite callSite = fallback.callSite;
+        final int relinkCount = fallback.relinkCount;
+        final long startTime = linkListener != null ? System.nanoTime() : 0L;
+        final LinkRequest linkRequest = createLinkRequest(callSite, relinkCount, arguments);
+        final GuardedInvocation linkedInvocation;
+        final GuardingDynamicLinker answeringLinker;
+        if(linkListener != null && linkerServices instanceof LinkerServicesImpl) {
+            final LinkerServicesImpl.AnsweredInvocation answeredInvocation =
+                    ((LinkerServicesImpl)linkerServices).getAnsweredInvocation(linkRequest);
+            linkedInvocation = answeredInvocation.getInvocation();
+            answeringLinker = answeredInvocation.getLinker();
+        } else {
+            linkedInvocation = linkerServices.getGuardedInvocation(linkRequest);
+            answeringLinker = null;
+        }
 
         // None found - throw an exception
-        if(guardedInvocation == null) {
-            throw new NoSuchDynamicMethodException(callSiteDescriptor.toString());
+        if(linkedInvocation == null) {
+            throw new NoSuchDynamicMethodException(callSite.getDescriptor().toString());
+        }
+
+        GuardedInvocation guardedInvocation = filterInvocation(linkedInvocation, linkRequest);
+        if(guardInstrumentationEnabled) {
+            final Object receiver = linkRequest.getReceiver();
+            final GuardCounter guardCounter = new GuardCounter(receiver == null ? "null" : receiver.getClass().getName());
+            guardedInvocation = guardedInvocation.countGuard(guardCounter);
+            callSiteRegistry.addGuardCounter(callSite, guardCounter);
+        }
+
+        final boolean unstableDetectionEnabled = unstableRelinkThreshold > 0;
+        int newRelinkCount = relinkCount;
+        // Note that the short-circuited "&&" evaluation below ensures we'll increment the relinkCount until
+        // threshold + 1 but not beyond that. Threshold + 1 is treated as a special value to signal that resetAndRelink
+        // has already executed once for the unstable call site; we only want the call site to throw away its current
+        // linkage once, when it transitions to unstable.
+        final boolean becameUnstable = unstableDetectionEnabled && newRelinkCount <= unstableRelinkThreshold &&
+                newRelinkCount++ == unstableRelinkThreshold;
+        if(becameUnstable) {
+            callSite.resetAndRelink(guardedInvocation, getRelinkAndInvokeMethod(fallback, newRelinkCount));
+        } else if(callSite instanceof ChainedCallSite && arguments.length > 0 &&
+                ((ChainedCallSite)callSite).isMegamorphic()) {
+            // Pass the receiver explicitly, as the invocation has to be added to the chain of its class
+            ((ChainedCallSite)callSite).relink(guardedInvocation, getRelinkAndInvokeMethod(fallback, newRelinkCount),
+                    arguments[0]);
+        } else {
+            callSite.relink(guardedInvocation, getRelinkAndInvokeMethod(fallback, newRelinkCount));
+        }
+        if(callSiteRegistry != null) {
+            callSiteRegistry.relinked(callSite, linkRequest);
+        }
+        if(linkProfile != null) {
+            linkProfile.record(linkRequest);
+        }
+        if(linkListener != null) {
+            final Object receiver = linkRequest.getReceiver();
+            linkListener.linked(new LinkEvent(callSite.getDescriptor(), receiver == null ? null : receiver.getClass(),
+                    answeringLinker, System.nanoTime() - startTime, relinkCount, becameUnstable,
+                    callSite instanceof ChainedCallSite ? ((ChainedCallSite)callSite).getChainLength() : 1));
+        }
+        if(syncOnRelink) {
+            if(syncBatch != null) {
+                syncBatch.add((MutableCallSite)callSite);
+            } else {
+                MutableCallSite.syncAll(new MutableCallSite[] { (MutableCallSite)callSite });
+            }
         }
+        return guardedInvocation.getInvocation();
+    }
 
+    /**
+     * Produces an invocation for the current arguments using the interim linker, and schedules linking of the call site
+     * on the asynchronous link executor unless it's already scheduled.
+     *
+     * @param fallback the fallback of the call site that was invoked
+     * @param arguments arguments to the invocation
+     * @return return the method handle for the invocation, or null if the interim linker can't produce one or the last
+     * background linking of the call site failed, in which case the call site must be linked synchronously.
+     * @throws Exception rethrows any exception thrown by the interim linker
+     */
+    private MethodHandle linkInBackground(final Fallback fallback, final Object... arguments) throws Exception {
+        if(fallback.backgroundLinkFailed) {
+            fallback.backgroundLinkFailed = false;
+            return null;
+        }
+        final RelinkableCallSite callSite = fallback.callSite;
+        final LinkRequest linkRequest = createLinkRequest(callSite, fallback.relinkCount, arguments);
+        final GuardedInvocation interimInvocation = interimLinker.getGuardedInvocation(linkRequest, linkerServices);
+        if(interimInvocation == null) {
+            return null;
+        }
+        if(backgroundLinks.putIfAbsent(callSite, Boolean.TRUE) == null) {
+            try {
+                asyncLinkExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            linkAndInstall(fallback, arguments);
+                        } catch(final Exception e) {
+                            // Leave the call site unlinked, and have its next invocation link it synchronously, so
+                            // the failure (if it persists) reaches the caller.
+                            fallback.backgroundLinkFailed = true;
+                            logBackgroundLinkFailure(callSite, e);
+                        } finally {
+                            backgroundLinks.remove(callSite);
+                        }
+                    }
+                });
+            } catch(final RejectedExecutionException e) {
+                backgroundLinks.remove(callSite);
+                return null;
+            }
+        }
+        return filterInvocation(interimInvocation, linkRequest).getInvocation();
+    }
+
+    private static void logBackgroundLinkFailure(final RelinkableCallSite callSite, final Exception e) {
+        if(LOG.isLoggable(Level.WARNING)) {
+            final LogRecord record = new LogRecord(Level.WARNING, "backgroundLinkFailed");
+            record.setLoggerName(LOG.getName());
+            record.setResourceBundle(LOG.getResourceBundle());
+            record.setParameters(new Object[] { callSite.getDescriptor() });
+            record.setThrown(e);
+            LOG.log(record);
+        }
+    }
+
+    private LinkRequest createLinkRequest(final RelinkableCallSite callSite, final int relinkCount, final Object... arguments) {
+        final CallSiteDescriptor callSiteDescriptor = callSite.getDescriptor();
+        final boolean callSiteUnstable = unstableRelinkThreshold > 0 && relinkCount >= unstableRelinkThreshold;
+        return runtimeContextArgCount == 0 ?
+                new LinkRequestImpl(callSiteDescriptor, callSite, relinkCount, callSiteUnstable, arguments) :
+                new RuntimeContextLinkRequestImpl(callSiteDescriptor, callSite, relinkCount, callSiteUnstable, arguments, runtimeContextArgCount);
+    }
+
+    private GuardedInvocation filterInvocation(final GuardedInvocation linkedInvocation, final LinkRequest linkRequest) {
+        GuardedInvocation guardedInvocation = linkedInvocation;
         // If our call sites have a runtime context, and the linker produced a context-stripped invocation, adapt the
         // produced invocation into contextual invocation (by dropping the context...)
         if(runtimeContextArgCount > 0) {
-            final MethodType origType = callSiteDescriptor.getMethodType();
+            final MethodType origType = linkRequest.getCallSiteDescriptor().getMethodType();
             final MethodHandle invocation = guardedInvocation.getInvocation();
             if(invocation.type().parameterCount() == origType.parameterCount() - runtimeContextArgCount) {
                 final List<Class<?>> prefix = origType.parameterList().subList(1, runtimeContextArgCount + 1);
-                final MethodHandle guard = guardedInvocation.getGuard();
                 guardedInvocation = guardedInvocation.dropArguments(1, prefix);
             }
         }
@@ -221,21 +555,39 @@ public class DynamicLinker {
         // return type of the invocation to the call site.
         guardedInvocation = prelinkFilter.filter(guardedInvocation, linkRequest, linkerServices);
         guardedInvocation.getClass(); // null pointer check
+        return guardedInvocation;
+    }
 
-        int newRelinkCount = relinkCount;
-        // Note that the short-circuited "&&" evaluation below ensures we'll increment the relinkCount until
-        // threshold + 1 but not beyond that. Threshold + 1 is treated as a special value to signal that resetAndRelink
-        // has already executed once for the unstable call site; we only want the call site to throw away its current
-        // linkage once, when it transitions to unstable.
-        if(unstableDetectionEnabled && newRelinkCount <= unstableRelinkThreshold && newRelinkCount++ == unstableRelinkThreshold) {
-            callSite.resetAndRelink(guardedInvocation, createRelinkAndInvokeMethod(callSite, newRelinkCount));
-        } else {
-            callSite.relink(guardedInvocation, createRelinkAndInvokeMethod(callSite, newRelinkCount));
+    /**
+     * The fallback of a call site for a particular relink count: the method handle invoked when none of the guards of
+     * the invocations linked into the call site pass, that relinks the call site and invokes the new invocation.
+     */
+    private static class Fallback {
+        final RelinkableCallSite callSite;
+        final int relinkCount;
+        // Set right after creation; a thread racing to see it as null will just create an equivalent method handle.
+        MethodHandle relinkAndInvoke;
+        // Set when linking in the background failed, so the next invocation links synchronously.
+        volatile boolean backgroundLinkFailed;
+
+        Fallback(final RelinkableCallSite callSite, final int relinkCount) {
+            this.callSite = callSite;
+            this.relinkCount = relinkCount;
         }
-        if(syncOnRelink) {
-            MutableCallSite.syncAll(new MutableCallSite[] { (MutableCallSite)callSite });
+    }
+
+    private static class PendingRelink {
+        final Thread thread = Thread.currentThread();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        boolean await(final long timeout) {
+            try {
+                return done.await(timeout, TimeUnit.MILLISECONDS);
+            } catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
         }
-        return guardedInvocation.getInvocation();
     }
 
     /**
@@ -61,6 +61,8 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import org.dynalang.dynalink.beans.BeansLinker;
 import org.dynalang.dynalink.linker.GuardingDynamicLinker;
 import org.dynalang.dynalink.linker.GuardingTypeConverterFactory;
@@ -68,12 +70,15 @@ import org.dynalang.dynalink.linker.LinkRequest;
 import org.dynalang.dynalink.linker.LinkerServices;
 import org.dynalang.dynalink.linker.MethodHandleTransformer;
 import org.dynalang.dynalink.linker.MethodTypeConversionStrategy;
+import org.dynalang.dynalink.support.AdaptiveChainLengthPolicy;
 import org.dynalang.dynalink.support.AutoDiscovery;
 import org.dynalang.dynalink.support.BottomGuardingDynamicLinker;
 import org.dynalang.dynalink.support.ClassLoaderGetterContextProvider;
 import org.dynalang.dynalink.support.CompositeGuardingDynamicLinker;
 import org.dynalang.dynalink.support.CompositeTypeBasedGuardingDynamicLinker;
 import org.dynalang.dynalink.support.DefaultPrelinkFilter;
+import org.dynalang.dynalink.support.LinkProfile;
+import org.dynalang.dynalink.support.LinkerCostAccounting;
 import org.dynalang.dynalink.support.LinkerServicesImpl;
 import org.dynalang.dynalink.support.TypeConverterFactory;
 import org.dynalang.dynalink.support.TypeUtilities;
@@ -99,7 +104,21 @@ public class DynamicLinkerFactory {
     private List<? extends GuardingDynamicLinker> fallbackLinkers;
     private int runtimeContextArgCount = 0;
     private boolean syncOnRelink = false;
+    private int syncBatchSize = 1;
+    private long syncBatchDelay = 0;
+    private ScheduledExecutorService syncBatchScheduler;
     private int unstableRelinkThreshold = DEFAULT_UNSTABLE_RELINK_THRESHOLD;
+    private ChainLengthPolicy chainLengthPolicy;
+    private long singleFlightRelinkTimeout = 0;
+    private Executor asyncLinkExecutor;
+    private GuardingDynamicLinker interimLinker;
+    private boolean callSiteRegistryEnabled = false;
+    private boolean guardInstrumentationEnabled = false;
+    private boolean linkerDecisionCacheEnabled = false;
+    private boolean linkerCostAccountingEnabled = false;
+    private LinkProfile linkProfile;
+    private Executor linkProfileWarmUpExecutor;
+    private LinkListener linkListener;
     private GuardedInvocationFilter prelinkFilter;
     private MethodTypeConversionStrategy autoConversionStrategy;
     private MethodHandleTransformer internalObjectsFilter;
@@ -206,6 +225,49 @@ public class DynamicLinkerFactory {
         this.syncOnRelink = syncOnRelink;
     }
 
+    /**
+     * Sets up batching of the {@link MutableCallSite#syncAll(MutableCallSite[])} invocations performed when
+     * {@link #setSyncOnRelink(boolean) sync on relink} is enabled. Instead of synchronizing every call site right after
+     * it is relinked, relinked call sites are collected and synchronized together, either when the batch size is
+     * reached, or when the delay has passed since the first call site was collected, whichever comes first. Code that
+     * needs the new targets to be visible to other threads immediately can invoke
+     * {@link DynamicLinker#syncRelinkedCallSites()}. By default, there is no batching.
+     * @param syncBatchSize the number of relinked call sites synchronized together. Must be at least 1; the value of 1
+     * means no batching.
+     * @param syncBatchDelay the maximum time in milliseconds a relinked call site waits to be synchronized. Must not be
+     * less than zero.
+     */
+    public void setSyncOnRelinkBatching(final int syncBatchSize, final long syncBatchDelay) {
+        setSyncOnRelinkBatching(syncBatchSize, syncBatchDelay, null);
+    }
+
+    /**
+     * Sets up batching of the {@link MutableCallSite#syncAll(MutableCallSite[])} invocations the same way as
+     * {@link #setSyncOnRelinkBatching(int, long)}, additionally specifying the executor that schedules the delayed
+     * synchronization. The executor is owned by the caller, who is responsible for shutting it down once the linker is
+     * no longer used; call sites relinked after it was shut down are synchronized immediately, as if there was no
+     * batching.
+     * If no executor is specified, a scheduler shared by all linkers is used; it runs on a single daemon thread that is
+     * created on first use and is never shut down.
+     * @param syncBatchSize the number of relinked call sites synchronized together. Must be at least 1; the value of 1
+     * means no batching.
+     * @param syncBatchDelay the maximum time in milliseconds a relinked call site waits to be synchronized. Must not be
+     * less than zero.
+     * @param syncBatchScheduler the executor scheduling delayed synchronization, or null for the shared scheduler.
+     */
+    public void setSyncOnRelinkBatching(final int syncBatchSize, final long syncBatchDelay,
+            final ScheduledExecutorService syncBatchScheduler) {
+        if(syncBatchSize < 1) {
+            throw new IllegalArgumentException("syncBatchSize < 1");
+        }
+        if(syncBatchDelay < 0) {
+            throw new IllegalArgumentException("syncBatchDelay < 0");
+        }
+        this.syncBatchSize = syncBatchSize;
+        this.syncBatchDelay = syncBatchDelay;
+        this.syncBatchScheduler = syncBatchScheduler;
+    }
+
     /**
      * Sets the unstable relink threshold; the number of times a call site is relinked after which it will be
      * considered unstable, and subsequent link requests for it will indicate this.
@@ -220,6 +282,135 @@ public class DynamicLinkerFactory {
         this.unstableRelinkThreshold = unstableRelinkThreshold;
     }
 
+    /**
+     * Sets the chain length policy for {@link ChainedCallSite}s linked by the linker created by this factory. Call
+     * sites that were created with their own policy keep using it. When not set, chained call sites have a fixed
+     * maximum chain length as returned by their {@code getMaxChainLength()} method. You can use
+     * {@link AdaptiveChainLengthPolicy} to have the maximum chain length of every call site adapt to the number of
+     * types it actually sees.
+     * @param chainLengthPolicy the chain length policy for chained call sites, or null.
+     */
+    public void setChainLengthPolicy(final ChainLengthPolicy chainLengthPolicy) {
+        this.chainLengthPolicy = chainLengthPolicy;
+    }
+
+    /**
+     * Sets the timeout for single-flight relinking. When it is positive, concurrent relinking of the same call site is
+     * coalesced: only one thread at a time runs the linkers for a call site, while other threads missing on the same
+     * call site wait up to the timeout for it to finish, and then invoke the newly linked target of the call site
+     * instead of linking it themselves. Threads that time out link the call site themselves. Defaults to 0, meaning
+     * every thread missing on a call site links it independently. You might want to set it if your runtime executes
+     * dynamically linked code on many threads concurrently.
+     * @param singleFlightRelinkTimeout the maximum time in milliseconds a thread waits for another thread relinking
+     * the same call site, or 0 to disable single-flight relinking. Must not be less than zero.
+     */
+    public void setSingleFlightRelinkTimeout(final long singleFlightRelinkTimeout) {
+        if(singleFlightRelinkTimeout < 0) {
+            throw new IllegalArgumentException("singleFlightRelinkTimeout < 0");
+        }
+        this.singleFlightRelinkTimeout = singleFlightRelinkTimeout;
+    }
+
+    /**
+     * Enables asynchronous linking. When a call site needs to be linked, the linker created by this factory will first
+     * ask the interim linker for an invocation. The interim linker is expected to produce a generic, non-specialized
+     * invocation quickly (e.g. one dispatching through the language runtime's own generic operation implementations).
+     * If it does, the current invocation of the call site is performed through it, and the actual linking of the call
+     * site is performed by the executor in the background; until it completes, further invocations of the call site
+     * that need linking are also performed through the interim linker. If the interim linker returns null, or the
+     * executor rejects the task, the call site is linked synchronously as usual. If linking in the background fails,
+     * the failure is logged, and the next invocation of the call site links it synchronously, so that the failure, if
+     * it persists, is thrown to the caller. Invocations produced by the interim linker are never linked into call
+     * sites.
+     * @param asyncLinkExecutor the executor performing the background linking, or null to disable asynchronous linking
+     * (this is also the default value).
+     * @param interimLinker the linker producing generic invocations while the call site is being linked in the
+     * background. Must not be null if the executor is not null.
+     */
+    public void setAsynchronousLinking(final Executor asyncLinkExecutor, final GuardingDynamicLinker interimLinker) {
+        if(asyncLinkExecutor != null && interimLinker == null) {
+            throw new IllegalArgumentException("interimLinker == null");
+        }
+        this.asyncLinkExecutor = asyncLinkExecutor;
+        this.interimLinker = interimLinker;
+    }
+
+    /**
+     * Sets whether the linker created by this factory will keep a registry of the call sites it links. The registry
+     * only weakly references the call sites, and records their descriptors, relink counts, unstable status, and
+     * receiver classes they were linked for. It can be obtained with {@link DynamicLinker#getCallSiteRegistry()} and
+     * exposed through JMX. Defaults to false.
+     * @param callSiteRegistryEnabled true for keeping a registry of linked call sites, false otherwise.
+     */
+    public void setCallSiteRegistryEnabled(final boolean callSiteRegistryEnabled) {
+        this.callSiteRegistryEnabled = callSiteRegistryEnabled;
+    }
+
+    /**
+     * Sets whether the linker created by this factory will instrument the guards of the invocations it links into call
+     * sites with {@link org.dynalang.dynalink.support.GuardCounter counters} of their passes and failures. The counters
+     * of a call site are available from the {@link DynamicLinker#getCallSiteRegistry() call site registry}, so enabling
+     * the instrumentation also enables the registry. The counting adds overhead to every evaluation of the guards, so it
+     * is meant for diagnosing which guards cause the call sites to fall back to relinking. Defaults to false, in which
+     * case the guards are linked as they are.
+     * @param guardInstrumentationEnabled true for counting guard passes and failures, false otherwise.
+     */
+    public void setGuardInstrumentationEnabled(final boolean guardInstrumentationEnabled) {
+        this.guardInstrumentationEnabled = guardInstrumentationEnabled;
+    }
+
+    /**
+     * Sets whether the composite linker created by this factory remembers for every receiver class and operation which
+     * of its component linkers produced the invocation, and asks that linker first on subsequent link requests for the
+     * same receiver class and operation, skipping the linkers before it. It can speed up linking considerably when there
+     * are several linkers in front of the one that usually produces the invocations. Only enable it if all linkers that
+     * aren't {@link org.dynalang.dynalink.linker.TypeBasedGuardingDynamicLinker type-based} decide whether they can link
+     * a request based only on the class of the receiver and the operation; the type-based ones are always dispatched by
+     * receiver class anyway. Defaults to false.
+     * @param linkerDecisionCacheEnabled true for caching which linker produces invocations, false otherwise.
+     * @see CompositeGuardingDynamicLinker#CompositeGuardingDynamicLinker(Iterable, boolean)
+     */
+    public void setLinkerDecisionCacheEnabled(final boolean linkerDecisionCacheEnabled) {
+        this.linkerDecisionCacheEnabled = linkerDecisionCacheEnabled;
+    }
+
+    /**
+     * Sets whether the linker created by this factory records the link costs of its component linkers: how many link
+     * requests each of them was asked to link, how many of them it produced an invocation for, how much time it spent
+     * on them, and how many method handle adaptations it requested from the linker services. The recorded costs are
+     * available through {@link DynamicLinker#getLinkerCostAccounting()}. Defaults to false.
+     * @param linkerCostAccountingEnabled true for recording the link costs of component linkers, false otherwise.
+     */
+    public void setLinkerCostAccountingEnabled(final boolean linkerCostAccountingEnabled) {
+        this.linkerCostAccountingEnabled = linkerCostAccountingEnabled;
+    }
+
+    /**
+     * Sets a link profile for the linker created by this factory. The linker will record every link it performs into the
+     * profile. Additionally, if an executor is specified, the linker will use it to warm up its linkers in the
+     * background for the receiver classes already present in the profile (typically because it was
+     * {@link LinkProfile#load(java.io.File) loaded} from a file saved by an earlier run of the program), so that call
+     * sites linked for those classes during startup don't have to wait for their introspection. Defaults to no profile.
+     * @param linkProfile the link profile, or null for no profile.
+     * @param linkProfileWarmUpExecutor the executor performing the warm-up of the linkers from the profile, or null for
+     * no warm-up.
+     */
+    public void setLinkProfile(final LinkProfile linkProfile, final Executor linkProfileWarmUpExecutor) {
+        this.linkProfile = linkProfile;
+        this.linkProfileWarmUpExecutor = linkProfileWarmUpExecutor;
+    }
+
+    /**
+     * Sets a listener notified of every call site linking performed by the linker created by this factory, with the
+     * descriptor of the call site, the receiver class, the component linker that produced the invocation, the time it
+     * took to link, the new chain length of the call site, and whether the call site became unstable. Defaults to no
+     * listener.
+     * @param linkListener the link listener, or null for no listener.
+     */
+    public void setLinkListener(final LinkListener linkListener) {
+        this.linkListener = linkListener;
+    }
+
     /**
      * Set the pre-link filter. This is a {@link GuardedInvocationFilter} that will get the final chance to modify the
      * guarded invocation after it has been created by a component linker and before the dynamic linker links it into
@@ -265,7 +456,9 @@ public class DynamicLinkerFactory {
 
     /**
      * Creates a new dynamic linker consisting of all the prioritized, autodiscovered, and fallback linkers as well as
-     * the pre-link filter.
+     * the pre-link filter. Autodiscovered linkers are only instantiated when they are first asked to link a call site,
+     * so a {@link java.util.ServiceConfigurationError} caused by a failure to instantiate one is thrown from that link
+     * attempt, and not from this method.
      *
      * @return the new dynamic Linker
      */
@@ -295,7 +488,7 @@ public class DynamicLinkerFactory {
         linkers.addAll(prioritizedLinkers);
         // ... filtered discovered linkers, ...
         for(final GuardingDynamicLinker linker: discovered) {
-            if(!knownLinkerClasses.contains(linker.getClass())) {
+            if(!knownLinkerClasses.contains(AutoDiscovery.getLinkerClass(linker))) {
                 linkers.add(linker);
             }
         }
@@ -313,7 +506,7 @@ public class DynamicLinkerFactory {
                 break;
             }
             default: {
-                composite = new CompositeGuardingDynamicLinker(optimized);
+                composite = new CompositeGuardingDynamicLinker(optimized, linkerDecisionCacheEnabled);
                 break;
             }
         }
@@ -329,9 +522,16 @@ public class DynamicLinkerFactory {
             prelinkFilter = new DefaultPrelinkFilter();
         }
 
+        if(linkProfile != null && linkProfileWarmUpExecutor != null) {
+            linkProfileWarmUpExecutor.execute(new LinkProfileWarmUp(linkProfile, optimized, effectiveClassLoader));
+        }
+
         return new DynamicLinker(new LinkerServicesImpl(new TypeConverterFactory(typeConverters,
-                autoConversionStrategy), composite, internalObjectsFilter), prelinkFilter, runtimeContextArgCount,
-                syncOnRelink, unstableRelinkThreshold);
+                autoConversionStrategy), composite, internalObjectsFilter, linkerCostAccountingEnabled ?
+                new LinkerCostAccounting() : null), prelinkFilter, runtimeContextArgCount,
+                syncOnRelink, unstableRelinkThreshold, chainLengthPolicy, singleFlightRelinkTimeout, syncBatchSize,
+                syncBatchDelay, syncBatchScheduler, asyncLinkExecutor, interimLinker, callSiteRegistryEnabled,
+                guardInstrumentationEnabled, linkProfile, linkListener);
     }
 
     private static ClassLoader getThreadContextClassLoader() {
@@ -0,0 +1,146 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink;
+
+import org.dynalang.dynalink.linker.GuardingDynamicLinker;
+
+/**
+ * An event describing a single linking of a call site by a dynamic linker, passed to {@link LinkListener}s.
+ *
+ * @author Attila Szegedi
+ */
+public class LinkEvent {
+    private final CallSiteDescriptor descriptor;
+    private final Class<?> receiverClass;
+    private final GuardingDynamicLinker linker;
+    private final long duration;
+    private final int relinkCount;
+    private final boolean unstableTransition;
+    private final int chainLength;
+
+    LinkEvent(final CallSiteDescriptor descriptor, final Class<?> receiverClass, final GuardingDynamicLinker linker,
+            final long duration, final int relinkCount, final boolean unstableTransition, final int chainLength) {
+        this.descriptor = descriptor;
+        this.receiverClass = receiverClass;
+        this.linker = linker;
+        this.duration = duration;
+        this.relinkCount = relinkCount;
+        this.unstableTransition = unstableTransition;
+        this.chainLength = chainLength;
+    }
+
+    /**
+     * Returns the descriptor of the linked call site.
+     * @return the descriptor of the linked call site.
+     */
+    public CallSiteDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Returns the class of the receiver the call site was linked for.
+     * @return the class of the receiver the call site was linked for, or null if the receiver was null.
+     */
+    public Class<?> getReceiverClass() {
+        return receiverClass;
+    }
+
+    /**
+     * Returns the component linker that produced the linked invocation.
+     * @return the component linker that produced the linked invocation, or null if it is not known.
+     */
+    public GuardingDynamicLinker getLinker() {
+        return linker;
+    }
+
+    /**
+     * Returns the time it took to produce and install the linked invocation, in nanoseconds.
+     * @return the time it took to produce and install the linked invocation, in nanoseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the number of times the call site had been relinked before this linking.
+     * @return the number of times the call site had been relinked before this linking.
+     */
+    public int getRelinkCount() {
+        return relinkCount;
+    }
+
+    /**
+     * Returns true if the call site became unstable with this linking, and was therefore
+     * {@link RelinkableCallSite#resetAndRelink(org.dynalang.dynalink.linker.GuardedInvocation,
+     * java.lang.invoke.MethodHandle) reset} instead of relinked.
+     * @return true if the call site became unstable with this linking.
+     */
+    public boolean isUnstableTransition() {
+        return unstableTransition;
+    }
+
+    /**
+     * Returns the number of method handles linked into the call site after this linking. For a {@link ChainedCallSite}
+     * it is the length of its chain, for other call sites it is 1.
+     * @return the number of method handles linked into the call site after this linking.
+     */
+    public int getChainLength() {
+        return chainLength;
+    }
+
+    @Override
+    public String toString() {
+        return descriptor + " receiver=" + (receiverClass == null ? "null" : receiverClass.getName()) + " linker=" +
+                linker + " duration=" + duration + "ns relinks=" + relinkCount + " chain=" + chainLength +
+                (unstableTransition ? " unstable" : "");
+    }
+}
@@ -0,0 +1,124 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.dynalang.dynalink.beans.BeansLinker;
+import org.dynalang.dynalink.linker.GuardingDynamicLinker;
+import org.dynalang.dynalink.linker.TypeBasedGuardingDynamicLinker;
+import org.dynalang.dynalink.support.AutoDiscovery;
+import org.dynalang.dynalink.support.LinkProfile;
+
+/**
+ * Warms up the linkers of a newly created dynamic linker using the entries of a {@link LinkProfile} recorded in an
+ * earlier run. It loads the classes in the call site method types of the profile, and has the linkers perform their
+ * per-class work (most notably, the introspection of classes by {@link BeansLinker}) for the receiver classes in the
+ * profile. Entries whose classes can't be loaded are skipped. It doesn't create call site descriptors, as nothing would
+ * retain them until the call sites they're meant for are created. Automatically discovered linkers that haven't been
+ * instantiated yet are skipped too: instantiating them would defeat their lazy loading, and they are usually never used
+ * in programs that don't link objects of their language.
+ *
+ * @author Attila Szegedi
+ */
+class LinkProfileWarmUp implements Runnable {
+    private final List<LinkProfile.Entry> entries;
+    private final List<? extends GuardingDynamicLinker> linkers;
+    private final ClassLoader classLoader;
+
+    /**
+     * Creates a new link profile warm-up task.
+     * @param profile the profile to warm up the linkers from.
+     * @param linkers the linkers to warm up.
+     * @param classLoader the class loader used to load the classes named in the profile.
+     */
+    LinkProfileWarmUp(final LinkProfile profile, final List<? extends GuardingDynamicLinker> linkers,
+            final ClassLoader classLoader) {
+        this.entries = profile.getEntries();
+        this.linkers = linkers;
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public void run() {
+        final Set<String> introspected = new HashSet<>();
+        for(final LinkProfile.Entry entry: entries) {
+            try {
+                entry.getMethodType(classLoader);
+            } catch(final TypeNotPresentException | IllegalArgumentException e) {
+                // Call site type no longer exists or is malformed; we can still introspect the receiver class.
+            }
+            if(introspected.add(entry.getReceiverClassName())) {
+                try {
+                    introspect(Class.forName(entry.getReceiverClassName(), false, classLoader));
+                } catch(final ClassNotFoundException | LinkageError | SecurityException e) {
+                    // Class no longer exists or can't be introspected; linking for it will just start cold.
+                }
+            }
+        }
+    }
+
+    private void introspect(final Class<?> receiverClass) {
+        for(final GuardingDynamicLinker discoveredLinker: linkers) {
+            final GuardingDynamicLinker linker = AutoDiscovery.getInstantiatedLinker(discoveredLinker);
+            if(AutoDiscovery.isLazyLinker(linker)) {
+                continue;
+            }
+            if(linker instanceof TypeBasedGuardingDynamicLinker) {
+                ((TypeBasedGuardingDynamicLinker)linker).canLinkType(receiverClass);
+            } else if(linker instanceof BeansLinker) {
+                BeansLinker.getLinkerForClass(receiverClass);
+            }
+        }
+    }
+}
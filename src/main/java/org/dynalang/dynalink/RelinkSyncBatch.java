@@ -0,0 +1,178 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink;
+
+import java.lang.invoke.MutableCallSite;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects relinked call sites of a dynamic linker and synchronizes them together with a single invocation of
+ * {@link MutableCallSite#syncAll(MutableCallSite[])}, either when a number of call sites has accumulated, or after a
+ * delay since the first call site was collected. Delayed synchronization is scheduled on either an executor provided
+ * through {@link DynamicLinkerFactory#setSyncOnRelinkBatching(int, long, ScheduledExecutorService)}, or on a scheduler
+ * shared by all batches. The shared scheduler runs on a single daemon thread that is created on first use and is never
+ * shut down; being a daemon, it doesn't prevent the JVM from exiting. Provided executors are owned by the caller, who is
+ * responsible for shutting them down. If a provided executor rejects the delayed synchronization (e.g. because it was
+ * shut down), the pending call sites are synchronized immediately.
+ *
+ * @author Attila Szegedi
+ */
+class RelinkSyncBatch {
+    private final int batchSize;
+    private final long delay;
+    private final ScheduledExecutorService scheduler;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private Set<MutableCallSite> pending = newCallSiteSet();
+    private boolean flushScheduled;
+
+    /**
+     * Creates a new relink sync batch.
+     * @param batchSize the number of pending call sites that triggers synchronization.
+     * @param delay the maximum delay in milliseconds after which pending call sites are synchronized.
+     * @param scheduler the executor scheduling delayed synchronization, or null to use the shared scheduler.
+     */
+    RelinkSyncBatch(final int batchSize, final long delay, final ScheduledExecutorService scheduler) {
+        this.batchSize = batchSize;
+        this.delay = delay;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Adds a relinked call site to the batch.
+     * @param callSite the relinked call site.
+     */
+    void add(final MutableCallSite callSite) {
+        final boolean full;
+        final boolean schedule;
+        synchronized(this) {
+            pending.add(callSite);
+            full = pending.size() >= batchSize;
+            schedule = !full && !flushScheduled;
+            if(schedule) {
+                flushScheduled = true;
+            }
+        }
+        if(schedule) {
+            try {
+                (scheduler != null ? scheduler : Scheduler.INSTANCE).schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+                return;
+            } catch(final RejectedExecutionException e) {
+                // The provided executor was shut down; don't leave the call sites waiting for a full batch.
+                synchronized(this) {
+                    flushScheduled = false;
+                }
+            }
+        } else if(!full) {
+            return;
+        }
+        flush();
+    }
+
+    /**
+     * Synchronizes all pending call sites.
+     */
+    void flush() {
+        final Set<MutableCallSite> callSites;
+        synchronized(this) {
+            if(pending.isEmpty()) {
+                return;
+            }
+            callSites = pending;
+            pending = newCallSiteSet();
+            flushScheduled = false;
+        }
+        MutableCallSite.syncAll(callSites.toArray(new MutableCallSite[callSites.size()]));
+    }
+
+    /**
+     * Returns the number of call sites waiting to be synchronized.
+     * @return the number of call sites waiting to be synchronized.
+     */
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private static Set<MutableCallSite> newCallSiteSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<MutableCallSite, Boolean>());
+    }
+
+    // Lazily initialized holder of the scheduler shared by all batches.
+    private static class Scheduler {
+        static final ScheduledExecutorService INSTANCE = createScheduler();
+
+        private static ScheduledExecutorService createScheduler() {
+            final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "Dynalink relink sync");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+}
@@ -58,6 +58,7 @@ import java.lang.invoke.SwitchPoint;
 import java.lang.invoke.WrongMethodTypeException;
 import java.util.List;
 import org.dynalang.dynalink.CallSiteDescriptor;
+import org.dynalang.dynalink.support.GuardCounter;
 import org.dynalang.dynalink.support.Guards;
 
 /**
@@ -248,6 +249,19 @@ public class GuardedInvocation {
         return replaceMethods(newInvocation, newGuard);
     }
 
+    /**
+     * Creates a new guarded invocation whose guard counts its passes and failures in the specified counter. The counting
+     * adds some overhead to every evaluation of the guard, so it is meant for diagnostic purposes.
+     * @param counter the counter for the passes and failures of the guard.
+     * @return a new guarded invocation with the counting guard, or this invocation if it has no guard.
+     */
+    public GuardedInvocation countGuard(final GuardCounter counter) {
+        if(guard == null) {
+            return this;
+        }
+        return replaceMethods(invocation, counter.count(guard));
+    }
+
     /**
      * Returns a new guarded invocation that has the passed switch point added to the end of the array of this
      * invocation's switch points.
@@ -51,6 +51,8 @@
 
 package org.dynalang.dynalink.linker;
 
+import java.lang.invoke.SwitchPoint;
+
 /**
  * Represents a tuple of a {@link GuardedInvocation} used for a type conversion, and a boolean flag
  * representing whether the conversion is cacheable. Normally, guarded invocation objects representing type
@@ -59,10 +61,13 @@ package org.dynalang.dynalink.linker;
  * objects to Java Single Abstract Method (SAM) classes through on-the-fly creation of proxy classes) might
  * need to be bound to the protection domain of the call site, and as such can't be cached and reused. The
  * expectation is that most conversions (all the ones that don't involve generating code) are cacheable, though.
+ * A language runtime that knows when its non-cacheable conversions become stale can instead specify a cache switch
+ * point, in which case the framework is allowed to reuse the conversion until the switch point is invalidated.
  */
 public class GuardedTypeConversion {
     private final GuardedInvocation conversionInvocation;
     private final boolean cacheable;
+    private final SwitchPoint cacheSwitchPoint;
 
     /**
      * Creates a new guarded type conversion.
@@ -74,6 +79,22 @@ public class GuardedTypeConversion {
     public GuardedTypeConversion(final GuardedInvocation conversionInvocation, final boolean cacheable) {
         this.conversionInvocation = conversionInvocation;
         this.cacheable = cacheable;
+        this.cacheSwitchPoint = null;
+    }
+
+    /**
+     * Creates a new non-cacheable guarded type conversion that the framework is nevertheless allowed to reuse for
+     * subsequent linking of type conversions until the specified switch point is invalidated. Invalidating the switch
+     * point causes the conversion to be requested again from its type converter factory.
+     * @param conversionInvocation the guarded invocation representing the conditional type conversion.
+     * @param cacheSwitchPoint the switch point whose invalidation ends the reuse of this conversion.
+     * @throws NullPointerException if cacheSwitchPoint is null.
+     */
+    public GuardedTypeConversion(final GuardedInvocation conversionInvocation, final SwitchPoint cacheSwitchPoint) {
+        cacheSwitchPoint.getClass(); // NPE check
+        this.conversionInvocation = conversionInvocation;
+        this.cacheable = false;
+        this.cacheSwitchPoint = cacheSwitchPoint;
     }
 
     /**
@@ -93,4 +114,13 @@ public class GuardedTypeConversion {
     public boolean isCacheable() {
         return cacheable;
     }
+
+    /**
+     * Returns the switch point whose invalidation ends the reuse of this non-cacheable conversion.
+     * @return the switch point whose invalidation ends the reuse of this conversion, or null if the conversion is
+     * either cacheable, or not reusable at all.
+     */
+    public SwitchPoint getCacheSwitchPoint() {
+        return cacheSwitchPoint;
+    }
 }
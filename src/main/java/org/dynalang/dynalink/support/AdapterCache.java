@@ -0,0 +1,211 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of method handles adapted to method types, keyed by the identity of the original method handle and the
+ * method type. Both the keys and the adapted method handles are weakly referenced, so the cache never keeps method
+ * handles or classes alive; an adapted method handle stays in the cache as long as something else, typically a call
+ * site, references it. Lookups don't take any locks and don't create references, and entries of collected method
+ * handles are expunged incrementally by the threads using the cache.
+ *
+ * @author Attila Szegedi
+ */
+class AdapterCache {
+    // Keys are Key instances; LookupKey instances are only used for probing.
+    private final ConcurrentMap<Object, AdapterRef> adapters = new ConcurrentHashMap<>();
+    private final ReferenceQueue<MethodHandle> queue = new ReferenceQueue<>();
+
+    /**
+     * Returns the cached adaptation of a method handle to a method type.
+     * @param handle the original method handle
+     * @param type the method type it was adapted to
+     * @return the adapted method handle, or null if it isn't cached.
+     */
+    MethodHandle get(final MethodHandle handle, final MethodType type) {
+        expungeStaleEntries();
+        final AdapterRef ref = adapters.get(new LookupKey(handle, type));
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Caches the adaptation of a method handle to a method type.
+     * @param handle the original method handle
+     * @param type the method type it was adapted to
+     * @param adapter the adapted method handle
+     * @return the adapted method handle already in the cache if another thread cached one in the meantime, otherwise
+     * the passed adapted method handle.
+     */
+    MethodHandle put(final MethodHandle handle, final MethodType type, final MethodHandle adapter) {
+        final Key key = new Key(handle, type);
+        final AdapterRef ref = new AdapterRef(key, adapter, queue);
+        for(;;) {
+            final AdapterRef prevRef = adapters.putIfAbsent(key, ref);
+            if(prevRef == null) {
+                return adapter;
+            }
+            final MethodHandle prev = prevRef.get();
+            if(prev != null) {
+                return prev;
+            }
+            // Cleared, but not yet expunged; replace it.
+            if(adapters.replace(key, prevRef, ref)) {
+                return adapter;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache, including ones for adapted method handles that were garbage
+     * collected, but not yet expunged.
+     * @return the number of entries in the cache.
+     */
+    int size() {
+        return adapters.size();
+    }
+
+    private void expungeStaleEntries() {
+        for(;;) {
+            final AdapterRef ref = (AdapterRef)queue.poll();
+            if(ref == null) {
+                return;
+            }
+            adapters.remove(ref.key, ref);
+        }
+    }
+
+    private static int hash(final MethodHandle handle, final MethodType type) {
+        return System.identityHashCode(handle) * 31 + type.hashCode();
+    }
+
+    private static class Key {
+        private final WeakReference<MethodHandle> handle;
+        private final WeakReference<MethodType> type;
+        private final int hash;
+
+        Key(final MethodHandle handle, final MethodType type) {
+            this.handle = new WeakReference<>(handle);
+            this.type = new WeakReference<>(type);
+            hash = hash(handle, type);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if(obj == this) {
+                return true;
+            }
+            // Keys with cleared references are only equal to themselves
+            final MethodHandle h = handle.get();
+            final MethodType t = type.get();
+            if(h == null || t == null) {
+                return false;
+            }
+            if(obj instanceof LookupKey) {
+                final LookupKey other = (LookupKey)obj;
+                return h == other.handle && t.equals(other.type);
+            }
+            if(obj instanceof Key) {
+                final Key other = (Key)obj;
+                return h == other.handle.get() && t.equals(other.type.get());
+            }
+            return false;
+        }
+    }
+
+    private static class LookupKey {
+        final MethodHandle handle;
+        final MethodType type;
+
+        LookupKey(final MethodHandle handle, final MethodType type) {
+            this.handle = handle;
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(handle, type);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if(obj instanceof Key) {
+                return obj.equals(this);
+            }
+            if(obj instanceof LookupKey) {
+                final LookupKey other = (LookupKey)obj;
+                return handle == other.handle && type.equals(other.type);
+            }
+            return false;
+        }
+    }
+
+    private static class AdapterRef extends WeakReference<MethodHandle> {
+        final Key key;
+
+        AdapterRef(final Key key, final MethodHandle adapter, final ReferenceQueue<MethodHandle> queue) {
+            super(adapter, queue);
+            this.key = key;
+        }
+    }
+}
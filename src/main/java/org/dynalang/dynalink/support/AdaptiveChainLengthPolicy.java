@@ -0,0 +1,129 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import org.dynalang.dynalink.CallSiteDescriptor;
+import org.dynalang.dynalink.ChainLengthPolicy;
+import org.dynalang.dynalink.ChainedCallSite;
+
+/**
+ * A {@link ChainedCallSite} chain length policy that starts every call site with a short chain and doubles its maximum
+ * length, up to a cap, whenever the call site would otherwise have to throw away a linked method handle. Monomorphic
+ * call sites thus keep a chain of length 1 or 2, while call sites that keep relinking with a bounded set of receiver
+ * types get a chain long enough to hold all of them. Once a call site has been linked more times than the growth
+ * limit, it is presumed to see an unbounded set of types; its chain is no longer grown, as that would only increase
+ * its cost without reducing relinking.
+ *
+ * @author Attila Szegedi
+ */
+public class AdaptiveChainLengthPolicy implements ChainLengthPolicy {
+    /**
+     * Default initial maximum chain length.
+     */
+    public static final int DEFAULT_INITIAL_LENGTH = 1;
+    /**
+     * Default cap on the maximum chain length.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 16;
+
+    private final int initialLength;
+    private final int maxLength;
+    private final int growthLinkLimit;
+
+    /**
+     * Creates a new adaptive chain length policy with default initial length and cap.
+     */
+    public AdaptiveChainLengthPolicy() {
+        this(DEFAULT_INITIAL_LENGTH, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Creates a new adaptive chain length policy. Chains stop growing once a call site has been linked more than
+     * twice the cap times.
+     * @param initialLength the initial maximum chain length of call sites. Must be at least 1.
+     * @param maxLength the cap on the maximum chain length of call sites. Must not be less than initial length.
+     */
+    public AdaptiveChainLengthPolicy(final int initialLength, final int maxLength) {
+        this(initialLength, maxLength, 2 * maxLength);
+    }
+
+    /**
+     * Creates a new adaptive chain length policy.
+     * @param initialLength the initial maximum chain length of call sites. Must be at least 1.
+     * @param maxLength the cap on the maximum chain length of call sites. Must not be less than initial length.
+     * @param growthLinkLimit the number of times a call site can be linked after which its chain is no longer grown.
+     */
+    public AdaptiveChainLengthPolicy(final int initialLength, final int maxLength, final int growthLinkLimit) {
+        if(initialLength < 1) {
+            throw new IllegalArgumentException("initialLength < 1");
+        }
+        if(maxLength < initialLength) {
+            throw new IllegalArgumentException("maxLength < initialLength");
+        }
+        this.initialLength = initialLength;
+        this.maxLength = maxLength;
+        this.growthLinkLimit = growthLinkLimit;
+    }
+
+    @Override
+    public int getInitialMaxChainLength(final CallSiteDescriptor descriptor) {
+        return initialLength;
+    }
+
+    @Override
+    public int getMaxChainLength(final CallSiteDescriptor descriptor, final int linkCount, final int maxChainLength) {
+        if(linkCount > growthLinkLimit) {
+            return Math.min(maxChainLength, maxLength);
+        }
+        return Math.min(maxChainLength * 2, maxLength);
+    }
+}
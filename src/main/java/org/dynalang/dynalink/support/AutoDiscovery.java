@@ -51,9 +51,26 @@
 
 package org.dynalang.dynalink.support;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ServiceLoader;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.Set;
+import java.util.WeakHashMap;
 import org.dynalang.dynalink.DynamicLinkerFactory;
 import org.dynalang.dynalink.linker.GuardingDynamicLinker;
 
@@ -61,9 +78,19 @@ import org.dynalang.dynalink.linker.GuardingDynamicLinker;
  * Provides methods for automatic discovery of all guarding dynamic linkers listed in the
  * <tt>/META-INF/services/org.dynalang.dynalink.linker.GuardingDynamicLinker</tt> resources of all JAR files for a
  * particular class loader. Ordinarily, you will not use this class directly, but you will use a
- * {@link DynamicLinkerFactory} instead.
+ * {@link DynamicLinkerFactory} instead. The names of the linker classes listed in the resources are cached for every
+ * class loader, and the discovered linkers are returned as lazy proxies: they implement all the public interfaces of the
+ * linker class, but the linker is only instantiated when a method is first invoked on the proxy. This way, creating
+ * many dynamic linkers is cheap, and discovered linkers that are never used are never instantiated. As a consequence,
+ * failures to instantiate a discovered linker are thrown from the first link request it is asked to link, and not when
+ * the linkers are discovered. Invoking the proxies is reflective, so the composite linkers use
+ * {@link #getInstantiatedLinker(GuardingDynamicLinker)} to invoke the linker directly once it has been instantiated.
  */
 public class AutoDiscovery {
+    private static final String SERVICES_RESOURCE = "META-INF/services/" + GuardingDynamicLinker.class.getName();
+
+    // Class names are cached, not classes, so the cache doesn't strongly reference the class loaders.
+    private static final Map<ClassLoader, List<String>> linkerClassNames = new WeakHashMap<>();
 
     private AutoDiscovery() {
     }
@@ -74,7 +101,7 @@ public class AutoDiscovery {
      * @return a list of available linkers. Can be zero-length list but not null.
      */
     public static List<GuardingDynamicLinker> loadLinkers() {
-        return getLinkers(ServiceLoader.load(GuardingDynamicLinker.class));
+        return loadLinkers(Thread.currentThread().getContextClassLoader());
     }
 
     /**
@@ -83,19 +110,182 @@ public class AutoDiscovery {
      * @param cl the class loader to use
      * @return a list of guarding dynamic linkers available through the specified class loader. Can be zero-length list
      * but not null.
+     * @throws ServiceConfigurationError if a listed linker class can not be loaded, or is not a public
+     * {@link GuardingDynamicLinker} class. Failures to instantiate a linker class are only thrown when the returned
+     * linker is first used.
      */
     public static List<GuardingDynamicLinker> loadLinkers(final ClassLoader cl) {
-        return getLinkers(ServiceLoader.load(GuardingDynamicLinker.class, cl));
+        final ClassLoader effectiveClassLoader = cl == null ? ClassLoader.getSystemClassLoader() : cl;
+        final List<GuardingDynamicLinker> list = new LinkedList<>();
+        for(final String className: getLinkerClassNames(effectiveClassLoader)) {
+            list.add(createLazyLinker(loadLinkerClass(className, effectiveClassLoader)));
+        }
+        return list;
     }
 
     /**
-     * I can't believe there's no Collections API for making a List given an Iterator...
+     * Returns the class of a linker. For linkers returned by the {@code loadLinkers} methods of this class, it returns
+     * the class of the linker they are proxies for, without instantiating it; for other linkers, it returns their class.
+     * @param linker the linker
+     * @return the class of the linker.
      */
-    private static <T> List<T> getLinkers(final ServiceLoader<T> loader) {
-        final List<T> list = new LinkedList<>();
-        for(final T linker: loader) {
-            list.add(linker);
+    public static Class<? extends GuardingDynamicLinker> getLinkerClass(final GuardingDynamicLinker linker) {
+        if(Proxy.isProxyClass(linker.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(linker);
+            if(handler instanceof LazyLinker) {
+                return ((LazyLinker)handler).linkerClass;
+            }
+        }
+        return linker.getClass();
+    }
+
+    /**
+     * Returns true if the linker is a proxy returned by the {@code loadLinkers} methods of this class. Checking it
+     * involves a lookup of the proxy classes that can be contended, so composite linkers only check it when they're
+     * created.
+     * @param linker the linker
+     * @return true if the linker is a proxy returned by the {@code loadLinkers} methods of this class.
+     */
+    public static boolean isLazyLinker(final GuardingDynamicLinker linker) {
+        return Proxy.isProxyClass(linker.getClass()) && Proxy.getInvocationHandler(linker) instanceof LazyLinker;
+    }
+
+    /**
+     * Returns the linker a proxy returned by the {@code loadLinkers} methods of this class stands for, if it has
+     * already been instantiated. Invoking the returned linker directly avoids the reflective invocation through the
+     * proxy.
+     * @param <T> the type of the linker
+     * @param linker the linker
+     * @return the instantiated linker if the passed linker is a proxy for it, otherwise the passed linker.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends GuardingDynamicLinker> T getInstantiatedLinker(final T linker) {
+        if(Proxy.isProxyClass(linker.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(linker);
+            if(handler instanceof LazyLinker) {
+                // The proxy implements all public interfaces of the linker class, so the linker is a T too.
+                final GuardingDynamicLinker instantiated = ((LazyLinker)handler).linker;
+                return instantiated != null ? (T)instantiated : linker;
+            }
+        }
+        return linker;
+    }
+
+    private static List<String> getLinkerClassNames(final ClassLoader cl) {
+        synchronized(linkerClassNames) {
+            final List<String> classNames = linkerClassNames.get(cl);
+            if(classNames != null) {
+                return classNames;
+            }
+        }
+        // Read the resources outside of the lock; if two threads race, they'll produce the same list.
+        final List<String> classNames = readLinkerClassNames(cl);
+        synchronized(linkerClassNames) {
+            linkerClassNames.put(cl, classNames);
+        }
+        return classNames;
+    }
+
+    private static List<String> readLinkerClassNames(final ClassLoader cl) {
+        final Set<String> classNames = new LinkedHashSet<>();
+        try {
+            final Enumeration<URL> resources = cl.getResources(SERVICES_RESOURCE);
+            while(resources.hasMoreElements()) {
+                final URL url = resources.nextElement();
+                try(final InputStream in = url.openStream()) {
+                    final BufferedReader r = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+                    for(String line = r.readLine(); line != null; line = r.readLine()) {
+                        final int commentStart = line.indexOf('#');
+                        final String className = (commentStart == -1 ? line : line.substring(0, commentStart)).trim();
+                        if(!className.isEmpty()) {
+                            classNames.add(className);
+                        }
+                    }
+                }
+            }
+        } catch(final IOException e) {
+            throw new ServiceConfigurationError("Failed reading " + SERVICES_RESOURCE, e);
+        }
+        return Collections.unmodifiableList(new ArrayList<>(classNames));
+    }
+
+    private static Class<? extends GuardingDynamicLinker> loadLinkerClass(final String className, final ClassLoader cl) {
+        final Class<?> clazz;
+        try {
+            clazz = Class.forName(className, false, cl);
+        } catch(final ClassNotFoundException e) {
+            throw new ServiceConfigurationError("Linker class " + className + " not found", e);
+        }
+        if(!GuardingDynamicLinker.class.isAssignableFrom(clazz)) {
+            throw new ServiceConfigurationError("Class " + className + " is not a " +
+                    GuardingDynamicLinker.class.getName());
+        }
+        return clazz.asSubclass(GuardingDynamicLinker.class);
+    }
+
+    private static GuardingDynamicLinker createLazyLinker(final Class<? extends GuardingDynamicLinker> linkerClass) {
+        final Set<Class<?>> interfaces = new LinkedHashSet<>();
+        addPublicInterfaces(linkerClass, interfaces);
+        return (GuardingDynamicLinker)Proxy.newProxyInstance(linkerClass.getClassLoader(), interfaces.toArray(
+                new Class<?>[interfaces.size()]), new LazyLinker(linkerClass));
+    }
+
+    private static void addPublicInterfaces(final Class<?> clazz, final Set<Class<?>> interfaces) {
+        for(Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for(final Class<?> iface: c.getInterfaces()) {
+                if(Modifier.isPublic(iface.getModifiers())) {
+                    interfaces.add(iface);
+                }
+                addPublicInterfaces(iface, interfaces);
+            }
+        }
+    }
+
+    private static class LazyLinker implements InvocationHandler {
+        final Class<? extends GuardingDynamicLinker> linkerClass;
+        private volatile GuardingDynamicLinker linker;
+
+        LazyLinker(final Class<? extends GuardingDynamicLinker> linkerClass) {
+            this.linkerClass = linkerClass;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if(method.getDeclaringClass() == Object.class) {
+                switch(method.getName()) {
+                    case "equals": return Boolean.valueOf(proxy == args[0]);
+                    case "hashCode": return Integer.valueOf(System.identityHashCode(proxy));
+                    case "toString": {
+                        final GuardingDynamicLinker l = linker;
+                        return l == null ? "lazy " + linkerClass.getName() : l.toString();
+                    }
+                    default: break;
+                }
+            }
+            try {
+                return method.invoke(getLinker(), args);
+            } catch(final InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private GuardingDynamicLinker getLinker() {
+            GuardingDynamicLinker l = linker;
+            if(l == null) {
+                synchronized(this) {
+                    l = linker;
+                    if(l == null) {
+                        try {
+                            l = linkerClass.getDeclaredConstructor().newInstance();
+                        } catch(final ReflectiveOperationException e) {
+                            throw new ServiceConfigurationError("Failed to instantiate linker " + linkerClass.getName(),
+                                    e);
+                        }
+                        linker = l;
+                    }
+                }
+            }
+            return l;
         }
-        return list;
     }
 }
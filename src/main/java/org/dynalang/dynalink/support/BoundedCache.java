@@ -0,0 +1,107 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package org.dynalang.dynalink.support;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent cache with a bounded number of entries. When the cache is full, it is cleared before a new entry is
+ * added, so values that are still in use get cached again while the ones that are no longer used are dropped. This is
+ * much cheaper than tracking recency of use, and it suits caches whose working set normally fits in them, but which
+ * must not grow without bounds if a program keeps producing new keys. Concurrent additions can overshoot the bound by
+ * a few entries.
+ *
+ * @author Attila Szegedi
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+class BoundedCache<K, V> {
+    private final ConcurrentMap<K, V> map = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum number of entries in the cache.
+     */
+    BoundedCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the value cached for the key.
+     * @param key the key
+     * @return the value cached for the key, or null if there is none.
+     */
+    V get(final K key) {
+        return map.get(key);
+    }
+
+    /**
+     * Caches a value for the key, clearing the cache first if it is full.
+     * @param key the key
+     * @param value the value
+     */
+    void put(final K key, final V value) {
+        if(map.size() >= maxSize) {
+            map.clear();
+        }
+        map.putIfAbsent(key, value);
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     * @return the number of entries in the cache.
+     */
+    int size() {
+        return map.size();
+    }
+}
@@ -54,12 +54,9 @@ package org.dynalang.dynalink.support;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
-import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.StringTokenizer;
-import java.util.WeakHashMap;
 import org.dynalang.dynalink.CallSiteDescriptor;
 
 /**
@@ -71,9 +68,28 @@ import org.dynalang.dynalink.CallSiteDescriptor;
  * @author Attila Szegedi
  */
 public class CallSiteDescriptorFactory {
-    private static final WeakHashMap<CallSiteDescriptor, WeakReference<CallSiteDescriptor>> publicDescs =
-            new WeakHashMap<>();
+    private static final ConcurrentWeakInterner<CallSiteDescriptor> publicDescs = new ConcurrentWeakInterner<>();
 
+    // Descriptors with non-public lookups are interned separately for each lookup class, so that the interner goes away
+    // together with the class. The interner only weakly references the descriptors (and through them, the lookups and
+    // the class), so it doesn't prevent the class from being unloaded.
+    private static final ClassValue<ConcurrentWeakInterner<CallSiteDescriptor>> lookupDescs =
+            new ClassValue<ConcurrentWeakInterner<CallSiteDescriptor>>() {
+        @Override
+        protected ConcurrentWeakInterner<CallSiteDescriptor> computeValue(final Class<?> type) {
+            return new ConcurrentWeakInterner<>();
+        }
+    };
+
+    private static final char TOKEN_DELIMITER = CallSiteDescriptor.TOKEN_DELIMITER.charAt(0);
+    private static final char OPERATOR_DELIMITER = CallSiteDescriptor.OPERATOR_DELIMITER.charAt(0);
+
+    // Operation names are few in practice, but the cache is bounded in case a runtime generates them.
+    private static final BoundedCache<String, List<String>> operators = new BoundedCache<>(1024);
+
+    // Names are more numerous than operation names (they contain property and method names), so more of them are
+    // cached. The cached arrays are shared by the created descriptors and must not be modified.
+    private static final BoundedCache<String, String[]> tokenizedNames = new BoundedCache<>(4096);
 
     private CallSiteDescriptorFactory() {
     }
@@ -87,31 +103,25 @@ public class CallSiteDescriptorFactory {
      * @param name the name of the method at the call site. Must not be null.
      * @param methodType the type of the method at the call site. Must not be null.
      * @return a call site descriptor representing the input. Note that although the method name is "create", it will
-     * in fact return a weakly-referenced canonical instance.
+     * in fact return a weakly-referenced canonical instance, for both public and non-public lookups.
      */
     public static CallSiteDescriptor create(final Lookup lookup, final String name, final MethodType methodType) {
         name.getClass(); // NPE check
         methodType.getClass(); // NPE check
         lookup.getClass(); // NPE check
-        final String[] tokenizedName = tokenizeName(name);
+        final String[] tokenizedName = getTokenizedName(name);
         if(isPublicLookup(lookup)) {
             return getCanonicalPublicDescriptor(createPublicCallSiteDescriptor(tokenizedName, methodType));
         }
-        return new LookupCallSiteDescriptor(tokenizedName, methodType, lookup);
+        return getCanonicalLookupDescriptor(new LookupCallSiteDescriptor(tokenizedName, methodType, lookup));
     }
 
     static CallSiteDescriptor getCanonicalPublicDescriptor(final CallSiteDescriptor desc) {
-        synchronized(publicDescs) {
-            final WeakReference<CallSiteDescriptor> ref = publicDescs.get(desc);
-            if(ref != null) {
-                final CallSiteDescriptor canonical = ref.get();
-                if(canonical != null) {
-                    return canonical;
-                }
-            }
-            publicDescs.put(desc, new WeakReference<>(desc));
-        }
-        return desc;
+        return publicDescs.intern(desc);
+    }
+
+    static CallSiteDescriptor getCanonicalLookupDescriptor(final CallSiteDescriptor desc) {
+        return lookupDescs.get(desc.getLookup().lookupClass()).intern(desc);
     }
 
     private static CallSiteDescriptor createPublicCallSiteDescriptor(final String[] tokenizedName, final MethodType methodType) {
@@ -130,6 +140,22 @@ public class CallSiteDescriptorFactory {
         return lookup == MethodHandles.publicLookup();
     }
 
+    /**
+     * Returns the tokenized name for a composite name from the cache, tokenizing it only if it isn't cached yet. The
+     * returned array must not be modified.
+     * @param name the composite name
+     * @return an array of tokens
+     */
+    private static String[] getTokenizedName(final String name) {
+        final String[] cached = tokenizedNames.get(name);
+        if(cached != null) {
+            return cached;
+        }
+        final String[] tokenized = tokenizeName(name);
+        tokenizedNames.put(name, tokenized);
+        return tokenized;
+    }
+
     /**
      * Tokenizes the composite name along colons, as well as {@link NameCodec#decode(String) demangles} and interns
      * the tokens. The first two tokens are not demangled as they are supposed to be the naming scheme and the name of
@@ -138,10 +164,9 @@ public class CallSiteDescriptorFactory {
      * @return an array of tokens
      */
     public static String[] tokenizeName(final String name) {
-        final StringTokenizer tok = new StringTokenizer(name, CallSiteDescriptor.TOKEN_DELIMITER);
-        final String[] tokens = new String[tok.countTokens()];
+        final String[] tokens = split(name, TOKEN_DELIMITER);
         for(int i = 0; i < tokens.length; ++i) {
-            String token = tok.nextToken();
+            String token = tokens[i];
             if(i > 1) {
                 token = NameCodec.decode(token);
             }
@@ -152,22 +177,62 @@ public class CallSiteDescriptorFactory {
 
     /**
      * Tokenizes a composite operation name along pipe characters. I.e. if you have a "dyn:getElem|getProp|getMethod"
-     * operation, returns a list of ["getElem", "getProp", "getMethod"]. The tokens are not interned.
+     * operation, returns a list of ["getElem", "getProp", "getMethod"]. The tokens are interned, and the returned list
+     * is immutable. Lists for operation names are cached, so operation names are only tokenized once.
      * @param desc the call site descriptor with the operation
      * @return a list of tokens
      */
     public static List<String> tokenizeOperators(final CallSiteDescriptor desc) {
         final String ops = desc.getNameToken(CallSiteDescriptor.OPERATOR);
-        final StringTokenizer tok = new StringTokenizer(ops, CallSiteDescriptor.OPERATOR_DELIMITER);
-        final int count = tok.countTokens();
-        if(count == 1) {
-            return Collections.singletonList(ops);
+        final List<String> cached = operators.get(ops);
+        if(cached != null) {
+            return cached;
+        }
+        final List<String> tokenized;
+        if(ops.indexOf(OPERATOR_DELIMITER) == -1) {
+            tokenized = Collections.singletonList(ops.intern());
+        } else {
+            final String[] tokens = split(ops, OPERATOR_DELIMITER);
+            for(int i = 0; i < tokens.length; ++i) {
+                tokens[i] = tokens[i].intern();
+            }
+            tokenized = Collections.unmodifiableList(Arrays.asList(tokens));
+        }
+        operators.put(ops, tokenized);
+        return tokenized;
+    }
+
+    /**
+     * Splits a string along a delimiter character, skipping empty tokens.
+     * @param str the string to split
+     * @param delimiter the delimiter character
+     * @return the array of non-empty tokens
+     */
+    private static String[] split(final String str, final char delimiter) {
+        final int l = str.length();
+        int count = 0;
+        for(int i = 0; i < l;) {
+            final int end = tokenEnd(str, i, delimiter);
+            if(end > i) {
+                ++count;
+            }
+            i = end + 1;
         }
         final String[] tokens = new String[count];
-        for(int i = 0; i < count; ++i) {
-            tokens[i] = tok.nextToken();
+        int j = 0;
+        for(int i = 0; i < l;) {
+            final int end = tokenEnd(str, i, delimiter);
+            if(end > i) {
+                tokens[j++] = str.substring(i, end);
+            }
+            i = end + 1;
         }
-        return Arrays.asList(tokens);
+        return tokens;
+    }
+
+    private static int tokenEnd(final String str, final int start, final char delimiter) {
+        final int end = str.indexOf(delimiter, start);
+        return end == -1 ? str.length() : end;
     }
 
     /**
@@ -0,0 +1,139 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.util.List;
+import org.dynalang.dynalink.CallSiteDescriptor;
+
+/**
+ * An immutable snapshot of the linkage state of a single call site, as recorded by a {@link CallSiteRegistry}.
+ *
+ * @author Attila Szegedi
+ */
+public class CallSiteInfo {
+    private final CallSiteDescriptor descriptor;
+    private final int relinkCount;
+    private final int chainLength;
+    private final boolean unstable;
+    private final List<String> receiverClasses;
+    private final List<GuardCounter> guardCounters;
+
+    CallSiteInfo(final CallSiteDescriptor descriptor, final int relinkCount, final int chainLength,
+            final boolean unstable, final List<String> receiverClasses, final List<GuardCounter> guardCounters) {
+        this.descriptor = descriptor;
+        this.relinkCount = relinkCount;
+        this.chainLength = chainLength;
+        this.unstable = unstable;
+        this.receiverClasses = receiverClasses;
+        this.guardCounters = guardCounters;
+    }
+
+    /**
+     * Returns the descriptor of the call site.
+     * @return the descriptor of the call site.
+     */
+    public CallSiteDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Returns the number of times the call site has been linked.
+     * @return the number of times the call site has been linked.
+     */
+    public int getRelinkCount() {
+        return relinkCount;
+    }
+
+    /**
+     * Returns the number of method handles currently linked into the call site. For a
+     * {@link org.dynalang.dynalink.ChainedCallSite} it is the length of its chain, for other call sites it is 1 once
+     * they have been linked.
+     * @return the number of method handles currently linked into the call site.
+     */
+    public int getChainLength() {
+        return chainLength;
+    }
+
+    /**
+     * Returns true if the call site was considered unstable the last time it was linked.
+     * @return true if the call site was considered unstable the last time it was linked.
+     */
+    public boolean isUnstable() {
+        return unstable;
+    }
+
+    /**
+     * Returns the names of the classes of receivers the call site has been linked for, in the order they were first
+     * encountered. The list is limited to the first {@value CallSiteRegistry#MAX_RECEIVER_CLASSES} classes.
+     * @return the names of the receiver classes the call site has been linked for.
+     */
+    public List<String> getReceiverClasses() {
+        return receiverClasses;
+    }
+
+    /**
+     * Returns the counters of the guards of the invocations linked into the call site, in the order they were linked.
+     * The list is limited to the last {@value CallSiteRegistry#MAX_GUARD_COUNTERS} linked invocations. It is empty
+     * unless {@link org.dynalang.dynalink.DynamicLinkerFactory#setGuardInstrumentationEnabled(boolean) guard
+     * instrumentation} is enabled. Note that while the list is a snapshot, the counters in it keep counting.
+     * @return the counters of the guards of the invocations linked into the call site.
+     */
+    public List<GuardCounter> getGuardCounters() {
+        return guardCounters;
+    }
+
+    @Override
+    public String toString() {
+        return "relinks=" + relinkCount + " chain=" + chainLength + (unstable ? " unstable " : " ") + descriptor +
+                " receivers=" + receiverClasses + (guardCounters.isEmpty() ? "" : " guards=" + guardCounters);
+    }
+}
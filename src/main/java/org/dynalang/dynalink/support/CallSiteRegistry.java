@@ -0,0 +1,242 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.dynalang.dynalink.ChainedCallSite;
+import org.dynalang.dynalink.DynamicLinker;
+import org.dynalang.dynalink.DynamicLinkerFactory;
+import org.dynalang.dynalink.RelinkableCallSite;
+import org.dynalang.dynalink.linker.LinkRequest;
+
+/**
+ * A registry of the call sites linked by a {@link DynamicLinker}, for diagnostic purposes. Call sites are only weakly
+ * referenced by the registry, so it doesn't prevent them (and the classes containing them) from being garbage
+ * collected. Recording relinks doesn't take any lock shared between call sites. It is created by the dynamic linker
+ * when enabled with {@link DynamicLinkerFactory#setCallSiteRegistryEnabled(boolean)}, and can be exposed through JMX
+ * using {@link #registerMBean(ObjectName)}.
+ *
+ * @author Attila Szegedi
+ */
+public class CallSiteRegistry implements CallSiteRegistryMBean {
+    /**
+     * The maximum number of distinct receiver classes recorded for a single call site.
+     */
+    public static final int MAX_RECEIVER_CLASSES = 64;
+
+    /**
+     * The maximum number of guard counters recorded for a single call site. When exceeded, the counters of the
+     * earliest linked invocations are discarded.
+     */
+    public static final int MAX_GUARD_COUNTERS = 64;
+
+    private static final Comparator<CallSiteInfo> BY_RELINK_COUNT = new Comparator<CallSiteInfo>() {
+        @Override
+        public int compare(final CallSiteInfo info1, final CallSiteInfo info2) {
+            return Integer.compare(info2.getRelinkCount(), info1.getRelinkCount());
+        }
+    };
+
+    private final ConcurrentWeakMap<RelinkableCallSite, Record> callSites = new ConcurrentWeakMap<>(true);
+
+    /**
+     * Registers a call site that is being linked for the first time.
+     * @param callSite the call site.
+     */
+    public void register(final RelinkableCallSite callSite) {
+        getRecord(callSite);
+    }
+
+    /**
+     * Records that a call site has been relinked.
+     * @param callSite the call site.
+     * @param linkRequest the link request the call site has been relinked for.
+     */
+    public void relinked(final RelinkableCallSite callSite, final LinkRequest linkRequest) {
+        final Object receiver = linkRequest.getReceiver();
+        final String receiverClass = receiver == null ? "null" : receiver.getClass().getName();
+        final Record record = getRecord(callSite);
+        synchronized(record) {
+            ++record.relinkCount;
+            record.unstable = linkRequest.isCallSiteUnstable();
+            if(record.receiverClasses.size() < MAX_RECEIVER_CLASSES) {
+                record.receiverClasses.add(receiverClass);
+            }
+        }
+    }
+
+    /**
+     * Records the counter of the guard of an invocation linked into a call site.
+     * @param callSite the call site.
+     * @param guardCounter the guard counter.
+     * @see org.dynalang.dynalink.DynamicLinkerFactory#setGuardInstrumentationEnabled(boolean)
+     */
+    public void addGuardCounter(final RelinkableCallSite callSite, final GuardCounter guardCounter) {
+        final Record record = getRecord(callSite);
+        synchronized(record) {
+            if(record.guardCounters.size() == MAX_GUARD_COUNTERS) {
+                record.guardCounters.removeFirst();
+            }
+            record.guardCounters.add(guardCounter);
+        }
+    }
+
+    private Record getRecord(final RelinkableCallSite callSite) {
+        final Record record = callSites.get(callSite);
+        if(record != null) {
+            return record;
+        }
+        final Record newRecord = new Record();
+        final Record existingRecord = callSites.putIfAbsent(callSite, newRecord);
+        return existingRecord != null ? existingRecord : newRecord;
+    }
+
+    /**
+     * Returns snapshots of all live call sites in the registry.
+     * @return snapshots of all live call sites in the registry.
+     */
+    public List<CallSiteInfo> getCallSites() {
+        final List<CallSiteInfo> infos = new ArrayList<>();
+        for(final Map.Entry<RelinkableCallSite, Record> entry: callSites.getLiveEntries().entrySet()) {
+            final RelinkableCallSite callSite = entry.getKey();
+            final Record record = entry.getValue();
+            synchronized(record) {
+                infos.add(new CallSiteInfo(callSite.getDescriptor(), record.relinkCount, getChainLength(callSite,
+                        record), record.unstable, Collections.unmodifiableList(new ArrayList<>(
+                                record.receiverClasses)), Collections.unmodifiableList(new ArrayList<>(
+                                        record.guardCounters))));
+            }
+        }
+        return infos;
+    }
+
+    private static int getChainLength(final RelinkableCallSite callSite, final Record record) {
+        if(callSite instanceof ChainedCallSite) {
+            return ((ChainedCallSite)callSite).getChainLength();
+        }
+        return record.relinkCount > 0 ? 1 : 0;
+    }
+
+    @Override
+    public int getCallSiteCount() {
+        return callSites.getLiveEntries().size();
+    }
+
+    @Override
+    public int getUnstableCallSiteCount() {
+        int count = 0;
+        for(final Record record: callSites.getLiveEntries().values()) {
+            synchronized(record) {
+                if(record.unstable) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getTotalRelinkCount() {
+        long count = 0;
+        for(final Record record: callSites.getLiveEntries().values()) {
+            synchronized(record) {
+                count += record.relinkCount;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String dump() {
+        return dumpMostRelinked(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public String dumpMostRelinked(final int count) {
+        final List<CallSiteInfo> infos = getCallSites();
+        Collections.sort(infos, BY_RELINK_COUNT);
+        final StringBuilder b = new StringBuilder();
+        final int l = Math.min(count, infos.size());
+        for(int i = 0; i < l; ++i) {
+            b.append(infos.get(i)).append('\n');
+        }
+        return b.toString();
+    }
+
+    /**
+     * Registers this registry with the platform MBean server.
+     * @param name the object name to register the registry under.
+     * @throws JMException if the registration fails.
+     */
+    public void registerMBean(final ObjectName name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    }
+
+    // Must not reference the call site or its descriptor, as that would keep the call site reachable from the registry.
+    // Accessed while synchronized on the record.
+    private static class Record {
+        final Set<String> receiverClasses = new LinkedHashSet<>();
+        final LinkedList<GuardCounter> guardCounters = new LinkedList<>();
+        int relinkCount;
+        boolean unstable;
+    }
+}
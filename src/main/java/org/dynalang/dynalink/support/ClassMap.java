@@ -55,21 +55,19 @@ import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.Map;
-import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * A dual map that can either strongly or weakly reference a given class depending on whether the class is visible from
- * a class loader or not.
+ * a class loader or not. Lookups of already computed values don't take any locks for either kind of classes.
  *
  * @author Attila Szegedi
  * @param <T> the type of the values in the map
  */
 public abstract class ClassMap<T> {
     private final ConcurrentMap<Class<?>, T> map = new ConcurrentHashMap<>();
-    private final Map<Class<?>, Reference<T>> weakMap = new WeakHashMap<>();
+    private final ConcurrentWeakMap<Class<?>, Reference<T>> weakMap = new ConcurrentWeakMap<>(true);
     private final ClassLoader classLoader;
 
     /**
@@ -104,15 +102,9 @@ public abstract class ClassMap<T> {
             return v;
         }
         // Check objects we're not allowed to strongly reference
-        Reference<T> ref;
-        synchronized(weakMap) {
-            ref = weakMap.get(clazz);
-        }
-        if(ref != null) {
-            final T refv = ref.get();
-            if(refv != null) {
-                return refv;
-            }
+        final T refv = getReferent(weakMap.get(clazz));
+        if(refv != null) {
+            return refv;
         }
         // Not found in either place; create a new value
         final T newV = computeValue(clazz);
@@ -131,16 +123,24 @@ public abstract class ClassMap<T> {
             return oldV != null ? oldV : newV;
         }
         // Otherwise, put it into the weak map
-        synchronized(weakMap) {
-            ref = weakMap.get(clazz);
-            if(ref != null) {
-                final T oldV = ref.get();
-                if(oldV != null) {
-                    return oldV;
-                }
+        final Reference<T> newRef = new SoftReference<>(newV);
+        for(;;) {
+            final Reference<T> oldRef = weakMap.putIfAbsent(clazz, newRef);
+            if(oldRef == null) {
+                return newV;
+            }
+            final T oldV = oldRef.get();
+            if(oldV != null) {
+                return oldV;
+            }
+            // The old value was softly cleared; replace it.
+            if(weakMap.replace(clazz, oldRef, newRef)) {
+                return newV;
             }
-            weakMap.put(clazz, new SoftReference<>(newV));
-            return newV;
         }
     }
+
+    private static <T> T getReferent(final Reference<T> ref) {
+        return ref == null ? null : ref.get();
+    }
 }
@@ -51,9 +51,14 @@
 
 package org.dynalang.dynalink.support;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.dynalang.dynalink.CallSiteDescriptor;
 import org.dynalang.dynalink.linker.GuardedInvocation;
 import org.dynalang.dynalink.linker.GuardingDynamicLinker;
 import org.dynalang.dynalink.linker.LinkRequest;
@@ -62,7 +67,8 @@ import org.dynalang.dynalink.linker.LinkerServices;
 /**
  * A {@link GuardingDynamicLinker} that delegates sequentially to a list of other guarding dynamic linkers. The first
  * value returned from a component linker other than null is returned. If no component linker returns an invocation,
- * null is returned.
+ * null is returned. Optionally, it can remember for every receiver class and operation which component linker produced
+ * the invocation, and ask that linker first on subsequent link requests for the same class and operation.
  *
  * @author Attila Szegedi
  */
@@ -70,7 +76,24 @@ public class CompositeGuardingDynamicLinker implements GuardingDynamicLinker, Se
 
     private static final long serialVersionUID = 1L;
 
-    private final GuardingDynamicLinker[] linkers;
+    // Replaced with a copy when a lazily instantiated discovered linker can be unwrapped; never modified in place.
+    private volatile GuardingDynamicLinker[] linkers;
+    // Marks the slots still holding lazily instantiated discovered linkers. Only modified while synchronized on it.
+    private final boolean[] lazyLinkers;
+    // Number of slots marked in lazyLinkers; once it's zero, invoking the linkers doesn't check them anymore.
+    private volatile int lazyLinkerCount;
+    private final boolean cacheDecisions;
+    // Class values aren't serializable; the cached decisions are recreated empty on deserialization.
+    private transient ClassValue<ConcurrentMap<String, Integer>> decisions;
+
+    // Using a separate static class instance so there's no strong reference from the class value back to the composite
+    // linker.
+    private static class Decisions extends ClassValue<ConcurrentMap<String, Integer>> {
+        @Override
+        protected ConcurrentMap<String, Integer> computeValue(final Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    }
 
     /**
      * Creates a new composite linker.
@@ -78,22 +101,120 @@ public class CompositeGuardingDynamicLinker implements GuardingDynamicLinker, Se
      * @param linkers a list of component linkers.
      */
     public CompositeGuardingDynamicLinker(final Iterable<? extends GuardingDynamicLinker> linkers) {
+        this(linkers, false);
+    }
+
+    /**
+     * Creates a new composite linker.
+     *
+     * @param linkers a list of component linkers.
+     * @param cacheDecisions if true, the composite linker remembers for every receiver class and operation which
+     * component linker produced the invocation, and on subsequent link requests for the same receiver class and
+     * operation it asks that linker first, skipping the linkers that precede it. Only use it if the component linkers
+     * decide whether they can link a request based only on the class of the receiver and the operation in the call
+     * site descriptor; if a component linker that produced the invocation declines a later request, all component
+     * linkers are asked in order again.
+     */
+    public CompositeGuardingDynamicLinker(final Iterable<? extends GuardingDynamicLinker> linkers,
+            final boolean cacheDecisions) {
         final List<GuardingDynamicLinker> l = new LinkedList<>();
         for(final GuardingDynamicLinker linker: linkers) {
             l.add(linker);
         }
         this.linkers = l.toArray(new GuardingDynamicLinker[l.size()]);
+        this.lazyLinkers = new boolean[this.linkers.length];
+        int lazyCount = 0;
+        for(int i = 0; i < this.linkers.length; ++i) {
+            if(AutoDiscovery.isLazyLinker(this.linkers[i])) {
+                lazyLinkers[i] = true;
+                ++lazyCount;
+            }
+        }
+        this.lazyLinkerCount = lazyCount;
+        this.cacheDecisions = cacheDecisions;
+        this.decisions = createDecisions(cacheDecisions);
+    }
+
+    private static ClassValue<ConcurrentMap<String, Integer>> createDecisions(final boolean cacheDecisions) {
+        return cacheDecisions ? new Decisions() : null;
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        decisions = createDecisions(cacheDecisions);
     }
 
     @Override
     public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest, final LinkerServices linkerServices)
             throws Exception {
-        for(final GuardingDynamicLinker linker: linkers) {
-            final GuardedInvocation invocation = linker.getGuardedInvocation(linkRequest, linkerServices);
-            if(invocation != null) {
-                return invocation;
+        final ConcurrentMap<String, Integer> classDecisions = getClassDecisions(linkRequest);
+        String operation = null;
+        int decision = -1;
+        if(classDecisions != null) {
+            operation = linkRequest.getCallSiteDescriptor().getNameToken(CallSiteDescriptor.OPERATOR);
+            final Integer knownDecision = classDecisions.get(operation);
+            if(knownDecision != null) {
+                // Ask the linker that produced the invocation last time first
+                decision = knownDecision.intValue();
+                final GuardedInvocation invocation = getGuardedInvocation(decision, linkRequest, linkerServices);
+                if(invocation != null) {
+                    return invocation;
+                }
+            }
+        }
+        for(int i = 0; i < linkers.length; ++i) {
+            if(i != decision) {
+                final GuardedInvocation invocation = getGuardedInvocation(i, linkRequest, linkerServices);
+                if(invocation != null) {
+                    if(classDecisions != null) {
+                        classDecisions.put(operation, Integer.valueOf(i));
+                    }
+                    return invocation;
+                }
             }
         }
         return null;
     }
+
+    private GuardedInvocation getGuardedInvocation(final int i, final LinkRequest linkRequest,
+            final LinkerServices linkerServices) throws Exception {
+        final GuardingDynamicLinker linker = linkers[i];
+        if(lazyLinkerCount == 0 || !lazyLinkers[i]) {
+            return LinkerServicesImpl.invokeLinker(linker, linkRequest, linkerServices);
+        }
+        try {
+            return LinkerServicesImpl.invokeLinker(linker, linkRequest, linkerServices);
+        } finally {
+            replaceLazyLinker(i, linker);
+        }
+    }
+
+    private void replaceLazyLinker(final int i, final GuardingDynamicLinker linker) {
+        final GuardingDynamicLinker instantiated = AutoDiscovery.getInstantiatedLinker(linker);
+        if(instantiated == linker) {
+            // Not instantiated yet (e.g. it failed)
+            return;
+        }
+        synchronized(lazyLinkers) {
+            if(lazyLinkers[i]) {
+                // Invoke the discovered linker directly from now on
+                final GuardingDynamicLinker[] newLinkers = linkers.clone();
+                newLinkers[i] = instantiated;
+                linkers = newLinkers;
+                lazyLinkers[i] = false;
+                --lazyLinkerCount;
+            }
+        }
+    }
+
+    private ConcurrentMap<String, Integer> getClassDecisions(final LinkRequest linkRequest) {
+        if(decisions == null) {
+            return null;
+        }
+        final Object receiver = linkRequest.getReceiver();
+        if(receiver == null || linkRequest.getCallSiteDescriptor().getNameTokenCount() <= CallSiteDescriptor.OPERATOR) {
+            return null;
+        }
+        return decisions.get(receiver.getClass());
+    }
 }
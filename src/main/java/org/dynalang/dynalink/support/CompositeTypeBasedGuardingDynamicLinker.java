@@ -78,13 +78,17 @@ public class CompositeTypeBasedGuardingDynamicLinker implements TypeBasedGuardin
         private static final List<TypeBasedGuardingDynamicLinker> NO_LINKER = Collections.emptyList();
         private final TypeBasedGuardingDynamicLinker[] linkers;
         private final List<TypeBasedGuardingDynamicLinker>[] singletonLinkers;
+        // Marks the lazily instantiated discovered linkers, so only those are checked for their instantiated linker.
+        private final boolean[] lazyLinkers;
 
         @SuppressWarnings("unchecked")
         ClassToLinker(final TypeBasedGuardingDynamicLinker[] linkers) {
             this.linkers = linkers;
             singletonLinkers = new List[linkers.length];
+            lazyLinkers = new boolean[linkers.length];
             for(int i = 0; i < linkers.length; ++i) {
                 singletonLinkers[i] = Collections.singletonList(linkers[i]);
+                lazyLinkers[i] = AutoDiscovery.isLazyLinker(linkers[i]);
             }
         }
 
@@ -92,11 +96,14 @@ public class CompositeTypeBasedGuardingDynamicLinker implements TypeBasedGuardin
         protected List<TypeBasedGuardingDynamicLinker> computeValue(final Class<?> clazz) {
             List<TypeBasedGuardingDynamicLinker> list = NO_LINKER;
             for(int i = 0; i < linkers.length; ++i) {
-                final TypeBasedGuardingDynamicLinker linker = linkers[i];
-                if(linker.canLinkType(clazz)) {
+                if(linkers[i].canLinkType(clazz)) {
+                    // Asking a lazily instantiated discovered linker instantiated it; bind the class to the linker
+                    // itself instead of its proxy.
+                    final TypeBasedGuardingDynamicLinker linker = lazyLinkers[i] ?
+                            AutoDiscovery.getInstantiatedLinker(linkers[i]) : linkers[i];
                     switch(list.size()) {
                         case 0: {
-                            list = singletonLinkers[i];
+                            list = linker == linkers[i] ? singletonLinkers[i] : Collections.singletonList(linker);
                             break;
                         }
                         case 1: {
@@ -141,7 +148,7 @@ public class CompositeTypeBasedGuardingDynamicLinker implements TypeBasedGuardin
             return null;
         }
         for(final TypeBasedGuardingDynamicLinker linker: classToLinker.get(obj.getClass())) {
-            final GuardedInvocation invocation = linker.getGuardedInvocation(linkRequest, linkerServices);
+            final GuardedInvocation invocation = LinkerServicesImpl.invokeLinker(linker, linkRequest, linkerServices);
             if(invocation != null) {
                 return invocation;
             }
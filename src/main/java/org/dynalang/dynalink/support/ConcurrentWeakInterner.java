@@ -0,0 +1,109 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+
+/**
+ * A weakly referencing interner of objects, safe for concurrent use. Lookups of already interned objects don't take any
+ * locks and don't create references, and entries for objects that have been garbage collected are expunged
+ * incrementally by the threads using the interner, so there's never a global lock or a full scan of the entries.
+ *
+ * @author Attila Szegedi
+ * @param <T> the type of the interned objects.
+ */
+class ConcurrentWeakInterner<T> {
+    // Maps interned objects to weak references to themselves, so the values don't keep the keys reachable.
+    private final ConcurrentWeakMap<T, Reference<T>> refs = new ConcurrentWeakMap<>(false);
+
+    /**
+     * Returns the canonical instance of an object. If an object equal to it has already been interned and is still
+     * reachable, that object is returned, otherwise the passed object is interned and returned.
+     * @param obj the object to intern.
+     * @return the canonical instance equal to the object.
+     */
+    T intern(final T obj) {
+        final T existing = get(refs.get(obj));
+        if(existing != null) {
+            return existing;
+        }
+        final Reference<T> ref = new WeakReference<>(obj);
+        for(;;) {
+            final Reference<T> prevRef = refs.putIfAbsent(obj, ref);
+            if(prevRef == null) {
+                return obj;
+            }
+            final T prev = prevRef.get();
+            if(prev != null) {
+                return prev;
+            }
+            // Cleared, but not yet expunged; replace it.
+            if(refs.replace(obj, prevRef, ref)) {
+                return obj;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in the interner, including ones for objects that were garbage collected, but not
+     * yet expunged.
+     * @return the number of entries in the interner.
+     */
+    int size() {
+        return refs.size();
+    }
+
+    private static <T> T get(final Reference<T> ref) {
+        return ref == null ? null : ref.get();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A map with weakly referenced keys, safe for concurrent use. Keys are compared either by identity or with their
+ * {@code equals} method. Lookups don't take any locks and don't create references; entries of keys that have been
+ * garbage collected are expunged incrementally by the threads using the map. Note that, as with any weakly keyed map,
+ * values must not strongly reference their keys, or the entries will never be expunged.
+ *
+ * @author Attila Szegedi
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+class ConcurrentWeakMap<K, V> {
+    // Keys are WeakKey instances; LookupKey instances are only used for probing.
+    private final ConcurrentMap<Object, V> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+    private final boolean identity;
+
+    /**
+     * Creates a new map.
+     * @param identity if true, keys are compared by identity, otherwise with their {@code equals} method.
+     */
+    ConcurrentWeakMap(final boolean identity) {
+        this.identity = identity;
+    }
+
+    /**
+     * Returns the value associated with the key.
+     * @param key the key
+     * @return the value associated with the key, or null if there is none.
+     */
+    V get(final K key) {
+        expungeStaleEntries();
+        return map.get(new LookupKey(key, identity));
+    }
+
+    /**
+     * Associates a value with a key unless it already has one.
+     * @param key the key
+     * @param value the value
+     * @return the value already associated with the key, or null if the passed value was associated with it.
+     */
+    V putIfAbsent(final K key, final V value) {
+        expungeStaleEntries();
+        return map.putIfAbsent(new WeakKey<>(key, queue, identity), value);
+    }
+
+    /**
+     * Replaces the value associated with a key only if it's currently associated with the expected value.
+     * @param key the key
+     * @param oldValue the expected value
+     * @param newValue the new value
+     * @return true if the value was replaced.
+     */
+    boolean replace(final K key, final V oldValue, final V newValue) {
+        return map.replace(new LookupKey(key, identity), oldValue, newValue);
+    }
+
+    /**
+     * Returns the number of entries in the map, including ones for keys that were garbage collected, but not yet
+     * expunged.
+     * @return the number of entries in the map.
+     */
+    int size() {
+        expungeStaleEntries();
+        return map.size();
+    }
+
+    /**
+     * Returns a snapshot of the entries of the map whose keys haven't been garbage collected.
+     * @return a snapshot of the live entries of the map.
+     */
+    Map<K, V> getLiveEntries() {
+        expungeStaleEntries();
+        final Map<K, V> entries = identity ? new IdentityHashMap<K, V>() : new HashMap<K, V>();
+        for(final Map.Entry<Object, V> entry: map.entrySet()) {
+            @SuppressWarnings("unchecked")
+            final K key = ((WeakKey<K>)entry.getKey()).get();
+            if(key != null) {
+                entries.put(key, entry.getValue());
+            }
+        }
+        return entries;
+    }
+
+    private void expungeStaleEntries() {
+        for(;;) {
+            final Object ref = queue.poll();
+            if(ref == null) {
+                return;
+            }
+            map.remove(ref);
+        }
+    }
+
+    private static int hash(final Object key, final boolean identity) {
+        return identity ? System.identityHashCode(key) : key.hashCode();
+    }
+
+    private static boolean keysEqual(final Object key1, final Object key2, final boolean identity) {
+        return key1 == key2 || !identity && key1.equals(key2);
+    }
+
+    private static class WeakKey<K> extends WeakReference<K> {
+        private final int hash;
+        private final boolean identity;
+
+        WeakKey(final K key, final ReferenceQueue<K> queue, final boolean identity) {
+            super(key, queue);
+            this.hash = hash(key, identity);
+            this.identity = identity;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if(obj == this) {
+                return true;
+            }
+            // Cleared references are only equal to themselves
+            final Object key = get();
+            if(key == null) {
+                return false;
+            }
+            final Object otherKey;
+            if(obj instanceof LookupKey) {
+                otherKey = ((LookupKey)obj).key;
+            } else if(obj instanceof WeakKey) {
+                otherKey = ((WeakKey<?>)obj).get();
+            } else {
+                return false;
+            }
+            return otherKey != null && keysEqual(key, otherKey, identity);
+        }
+    }
+
+    private static class LookupKey {
+        final Object key;
+        final boolean identity;
+
+        LookupKey(final Object key, final boolean identity) {
+            this.key = key;
+            this.identity = identity;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(key, identity);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if(obj instanceof WeakKey) {
+                return obj.equals(this);
+            }
+            return obj instanceof LookupKey && keysEqual(key, ((LookupKey)obj).key, identity);
+        }
+    }
+}
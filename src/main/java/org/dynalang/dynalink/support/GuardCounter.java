@@ -0,0 +1,126 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.atomic.AtomicLong;
+import org.dynalang.dynalink.linker.GuardedInvocation;
+
+/**
+ * Counts the passes and failures of the guard of an invocation linked into a call site. Guards are instrumented with
+ * counters using {@link GuardedInvocation#countGuard(GuardCounter)}; the dynamic linker does this for every linked
+ * invocation when {@link org.dynalang.dynalink.DynamicLinkerFactory#setGuardInstrumentationEnabled(boolean) enabled},
+ * and the counters of a call site can be obtained from the {@link CallSiteRegistry}.
+ *
+ * @author Attila Szegedi
+ */
+public class GuardCounter {
+    private static final MethodHandle COUNT = Lookup.findOwnSpecial(MethodHandles.lookup(), "count", boolean.class,
+            boolean.class);
+
+    private final String receiverClass;
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Creates a new guard counter.
+     * @param receiverClass the name of the class of the receiver the guarded invocation was linked for.
+     */
+    public GuardCounter(final String receiverClass) {
+        this.receiverClass = receiverClass;
+    }
+
+    /**
+     * Returns a method handle that invokes the guard and counts its result.
+     * @param guard the guard to count.
+     * @return a method handle of the same type as the guard, that invokes it and counts its result.
+     */
+    public MethodHandle count(final MethodHandle guard) {
+        return MethodHandles.filterReturnValue(guard, COUNT.bindTo(this));
+    }
+
+    @SuppressWarnings("unused")
+    private boolean count(final boolean result) {
+        (result ? passes : failures).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Returns the name of the class of the receiver the guarded invocation was linked for.
+     * @return the name of the class of the receiver the guarded invocation was linked for.
+     */
+    public String getReceiverClass() {
+        return receiverClass;
+    }
+
+    /**
+     * Returns the number of times the guard passed.
+     * @return the number of times the guard passed.
+     */
+    public long getPasses() {
+        return passes.get();
+    }
+
+    /**
+     * Returns the number of times the guard failed.
+     * @return the number of times the guard failed.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return receiverClass + " passes=" + getPasses() + " failures=" + getFailures();
+    }
+}
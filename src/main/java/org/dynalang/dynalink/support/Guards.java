@@ -84,11 +84,11 @@ public class Guards {
     public static MethodHandle isOfClass(final Class<?> clazz, final MethodType type) {
         final Class<?> declaredType = type.parameterType(0);
         if(clazz == declaredType) {
-            LOG.log(Level.WARNING, "isOfClassGuardAlwaysTrue", new Object[] { clazz.getName(), 0, type, DynamicLinker.getLinkedCallSiteLocation() });
+            logDegenerateGuard("isOfClassGuardAlwaysTrue", clazz.getName(), 0, type);
             return constantTrue(type);
         }
         if(!declaredType.isAssignableFrom(clazz)) {
-            LOG.log(Level.WARNING, "isOfClassGuardAlwaysFalse", new Object[] { clazz.getName(), 0, type, DynamicLinker.getLinkedCallSiteLocation() });
+            logDegenerateGuard("isOfClassGuardAlwaysFalse", clazz.getName(), 0, type);
             return constantFalse(type);
         }
         return getClassBoundArgumentTest(IS_OF_CLASS, clazz, 0, type);
@@ -121,11 +121,11 @@ public class Guards {
     public static MethodHandle isInstance(final Class<?> clazz, final int pos, final MethodType type) {
         final Class<?> declaredType = type.parameterType(pos);
         if(clazz.isAssignableFrom(declaredType)) {
-            LOG.log(Level.WARNING, "isInstanceGuardAlwaysTrue", new Object[] { clazz.getName(), pos, type, DynamicLinker.getLinkedCallSiteLocation() });
+            logDegenerateGuard("isInstanceGuardAlwaysTrue", clazz.getName(), pos, type);
             return constantTrue(type);
         }
         if(!declaredType.isAssignableFrom(clazz)) {
-            LOG.log(Level.WARNING, "isInstanceGuardAlwaysFalse", new Object[] { clazz.getName(), pos, type, DynamicLinker.getLinkedCallSiteLocation() });
+            logDegenerateGuard("isInstanceGuardAlwaysFalse", clazz.getName(), pos, type);
             return constantFalse(type);
         }
         return getClassBoundArgumentTest(IS_INSTANCE, clazz, pos, type);
@@ -143,16 +143,30 @@ public class Guards {
     public static MethodHandle isArray(final int pos, final MethodType type) {
         final Class<?> declaredType = type.parameterType(pos);
         if(declaredType.isArray()) {
-            LOG.log(Level.WARNING, "isArrayGuardAlwaysTrue", new Object[] { pos, type, DynamicLinker.getLinkedCallSiteLocation() });
+            logDegenerateGuard("isArrayGuardAlwaysTrue", pos, type);
             return constantTrue(type);
         }
         if(!declaredType.isAssignableFrom(Object[].class)) {
-            LOG.log(Level.WARNING, "isArrayGuardAlwaysFalse", new Object[] { pos, type, DynamicLinker.getLinkedCallSiteLocation() });
+            logDegenerateGuard("isArrayGuardAlwaysFalse", pos, type);
             return constantFalse(type);
         }
         return asType(IS_ARRAY, pos, type);
     }
 
+    /**
+     * Logs a warning about a guard that always returns the same value. The location of the call site being linked is
+     * logged in a separate record at {@code FINE} level, as computing it captures the stack trace of the current thread,
+     * which is too costly to do for every such guard when only warnings are logged.
+     * @param key the message key
+     * @param params the message parameters
+     */
+    private static void logDegenerateGuard(final String key, final Object... params) {
+        LOG.log(Level.WARNING, key, params);
+        if(LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, "degenerateGuardLocation", DynamicLinker.getLinkedCallSiteLocation());
+        }
+    }
+
     /**
      * Return true if it is safe to strongly reference a class from the referred class loader from a class associated
      * with the referring class loader without risking a class loader memory leak.
@@ -0,0 +1,289 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.dynalang.dynalink.CallSiteDescriptor;
+import org.dynalang.dynalink.DynamicLinkerFactory;
+import org.dynalang.dynalink.linker.LinkRequest;
+
+/**
+ * A profile of the links performed by dynamic linkers, used to warm up the linkers of later runs of the same program.
+ * For every link it records the name and method type of the call site descriptor and the class of the receiver the call
+ * site was linked for. The profile can be saved to a file (most conveniently at the shutdown of the JVM using
+ * {@link #saveOnShutdown(File)}), and loaded in a later run. When set on a {@link DynamicLinkerFactory} using
+ * {@link DynamicLinkerFactory#setLinkProfile(LinkProfile, java.util.concurrent.Executor)}, the created linker both
+ * records its links into the profile, and performs the introspection of the receiver classes already present in the
+ * profile in the background, so that call sites linked for those classes don't have to wait for it.
+ *
+ * @author Attila Szegedi
+ */
+public class LinkProfile {
+    /**
+     * The maximum number of distinct entries recorded in a profile. Once a profile is full, further links are not
+     * recorded; unlike a cache, a profile is a sample, and the links it keeps from the start of a run are the ones that
+     * benefit the most from warming up. Concurrent recording can overshoot the limit by a few entries.
+     */
+    public static final int MAX_ENTRIES = 65536;
+
+    private static final int MAGIC = 0x44594C50; // "DYLP"
+    private static final int VERSION = 1;
+
+    private final Set<Entry> entries = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+    // Call site descriptors already recorded for receiver classes, so entries aren't created for repeated links.
+    private final ClassValue<ConcurrentWeakMap<CallSiteDescriptor, Boolean>> recorded =
+            new ClassValue<ConcurrentWeakMap<CallSiteDescriptor, Boolean>>() {
+        @Override
+        protected ConcurrentWeakMap<CallSiteDescriptor, Boolean> computeValue(final Class<?> type) {
+            return new ConcurrentWeakMap<>(false);
+        }
+    };
+
+    /**
+     * Creates a new, empty link profile.
+     */
+    public LinkProfile() {
+    }
+
+    /**
+     * Loads a link profile from a file previously written by {@link #save(File)}. If the file doesn't exist, an empty
+     * profile is returned.
+     * @param file the file to load the profile from.
+     * @return the loaded profile.
+     * @throws IOException if the file can't be read or isn't a link profile.
+     */
+    public static LinkProfile load(final File file) throws IOException {
+        final LinkProfile profile = new LinkProfile();
+        if(file.exists()) {
+            try(final InputStream in = new FileInputStream(file)) {
+                profile.load(in);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Loads entries previously written by {@link #save(OutputStream)} into this profile.
+     * @param in the stream to read the entries from. It is not closed by this method.
+     * @throws IOException if the stream can't be read or doesn't contain a link profile.
+     */
+    public void load(final InputStream in) throws IOException {
+        final DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+        if(din.readInt() != MAGIC) {
+            throw new IOException("Not a link profile");
+        }
+        final int version = din.readInt();
+        if(version != VERSION) {
+            throw new IOException("Unsupported link profile version " + version);
+        }
+        final int count = din.readInt();
+        for(int i = 0; i < count; ++i) {
+            add(new Entry(din.readUTF(), din.readUTF(), din.readUTF()));
+        }
+    }
+
+    /**
+     * Saves this profile into a file.
+     * @param file the file to save the profile into.
+     * @throws IOException if the file can't be written.
+     */
+    public void save(final File file) throws IOException {
+        try(final OutputStream out = new FileOutputStream(file)) {
+            save(out);
+        }
+    }
+
+    /**
+     * Writes the entries of this profile into a stream.
+     * @param out the stream to write the entries into. It is not closed by this method.
+     * @throws IOException if the stream can't be written.
+     */
+    public void save(final OutputStream out) throws IOException {
+        final List<Entry> snapshot = getEntries();
+        final DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+        dout.writeInt(MAGIC);
+        dout.writeInt(VERSION);
+        dout.writeInt(snapshot.size());
+        for(final Entry entry: snapshot) {
+            dout.writeUTF(entry.name);
+            dout.writeUTF(entry.methodDescriptor);
+            dout.writeUTF(entry.receiverClassName);
+        }
+        dout.flush();
+    }
+
+    /**
+     * Registers a JVM shutdown hook that saves this profile into a file. Errors while saving are ignored, as the
+     * profile is only an optimization.
+     * @param file the file to save the profile into.
+     */
+    public void saveOnShutdown(final File file) {
+        Runtime.getRuntime().addShutdownHook(new Thread("Dynalink link profile writer") {
+            @Override
+            public void run() {
+                try {
+                    save(file);
+                } catch(final IOException e) {
+                    // Ignore; next run will just start cold.
+                }
+            }
+        });
+    }
+
+    /**
+     * Records a link request in this profile. Requests with a null receiver are not recorded.
+     * @param linkRequest the link request.
+     */
+    public void record(final LinkRequest linkRequest) {
+        final Object receiver = linkRequest.getReceiver();
+        if(receiver == null || entries.size() >= MAX_ENTRIES) {
+            return;
+        }
+        final CallSiteDescriptor descriptor = linkRequest.getCallSiteDescriptor();
+        final ConcurrentWeakMap<CallSiteDescriptor, Boolean> descriptors = recorded.get(receiver.getClass());
+        if(descriptors.get(descriptor) == null && descriptors.putIfAbsent(descriptor, Boolean.TRUE) == null) {
+            add(new Entry(descriptor.getName(), descriptor.getMethodType().toMethodDescriptorString(),
+                    receiver.getClass().getName()));
+        }
+    }
+
+    private void add(final Entry entry) {
+        if(entries.size() < MAX_ENTRIES) {
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the entries in this profile.
+     * @return a snapshot of the entries in this profile.
+     */
+    public List<Entry> getEntries() {
+        return new ArrayList<>(entries);
+    }
+
+    /**
+     * A single entry in a link profile: a call site descriptor name and method type, and a class of receiver a call
+     * site with these was linked for.
+     */
+    public static class Entry {
+        private final String name;
+        private final String methodDescriptor;
+        private final String receiverClassName;
+
+        Entry(final String name, final String methodDescriptor, final String receiverClassName) {
+            this.name = name;
+            this.methodDescriptor = methodDescriptor;
+            this.receiverClassName = receiverClassName;
+        }
+
+        /**
+         * Returns the name of the call site descriptor.
+         * @return the name of the call site descriptor.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the method type of the call site descriptor, resolved in the specified class loader.
+         * @param classLoader the class loader used to resolve the classes in the method type.
+         * @return the method type of the call site descriptor.
+         * @throws TypeNotPresentException if a class in the method type can not be found.
+         */
+        public MethodType getMethodType(final ClassLoader classLoader) {
+            return MethodType.fromMethodDescriptorString(methodDescriptor, classLoader);
+        }
+
+        /**
+         * Returns the name of the class of the receiver.
+         * @return the name of the class of the receiver.
+         */
+        public String getReceiverClassName() {
+            return receiverClassName;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if(!(obj instanceof Entry)) {
+                return false;
+            }
+            final Entry other = (Entry)obj;
+            return name.equals(other.name) && methodDescriptor.equals(other.methodDescriptor) &&
+                    receiverClassName.equals(other.receiverClassName);
+        }
+
+        @Override
+        public int hashCode() {
+            return (name.hashCode() * 31 + methodDescriptor.hashCode()) * 31 + receiverClassName.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name + methodDescriptor + " " + receiverClassName;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import org.dynalang.dynalink.linker.GuardingDynamicLinker;
+
+/**
+ * An immutable snapshot of the link costs of a single component linker, as recorded by a
+ * {@link LinkerCostAccounting}.
+ *
+ * @author Attila Szegedi
+ */
+public class LinkerCost {
+    private final GuardingDynamicLinker linker;
+    private final long requests;
+    private final long hits;
+    private final long time;
+    private final long adapters;
+
+    LinkerCost(final GuardingDynamicLinker linker, final long requests, final long hits, final long time,
+            final long adapters) {
+        this.linker = linker;
+        this.requests = requests;
+        this.hits = hits;
+        this.time = time;
+        this.adapters = adapters;
+    }
+
+    /**
+     * Returns the linker.
+     * @return the linker.
+     */
+    public GuardingDynamicLinker getLinker() {
+        return linker;
+    }
+
+    /**
+     * Returns the number of link requests the linker was asked to link.
+     * @return the number of link requests the linker was asked to link.
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of link requests the linker produced a guarded invocation for.
+     * @return the number of link requests the linker produced a guarded invocation for.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of link requests the linker declined (returned null for or threw an exception).
+     * @return the number of link requests the linker declined.
+     */
+    public long getDeclines() {
+        return requests - hits;
+    }
+
+    /**
+     * Returns the total time the linker spent on link requests, in nanoseconds.
+     * @return the total time the linker spent on link requests, in nanoseconds.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of method handle adaptations the linker requested from the linker services while linking,
+     * that is, the number of invocations of {@link LinkerServicesImpl#asType(java.lang.invoke.MethodHandle,
+     * java.lang.invoke.MethodType) asType} (including through {@code asTypeLosslessReturn}),
+     * {@link LinkerServicesImpl#getTypeConverter(Class, Class) getTypeConverter}, and
+     * {@link LinkerServicesImpl#filterInternalObjects(java.lang.invoke.MethodHandle) filterInternalObjects}. Method
+     * handles the linker adapts directly through {@link java.lang.invoke.MethodHandles} are not counted.
+     * @return the number of method handle adaptations the linker requested from the linker services.
+     */
+    public long getAdapters() {
+        return adapters;
+    }
+
+    @Override
+    public String toString() {
+        return linker + " requests=" + requests + " hits=" + hits + " declines=" + getDeclines() + " time=" + time +
+                "ns adapters=" + adapters;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.dynalang.dynalink.DynamicLinkerFactory;
+import org.dynalang.dynalink.linker.GuardingDynamicLinker;
+
+/**
+ * Records the link costs of individual component linkers: the number of link requests they were asked to link, the
+ * number of them they produced an invocation for, the time they spent on them, and the number of method handle
+ * adaptations they requested from the linker services. It is created by the dynamic linker factory when enabled with
+ * {@link DynamicLinkerFactory#setLinkerCostAccountingEnabled(boolean)}. Only component linkers are accounted for;
+ * composite linkers are not, as their costs are the sum of the costs of their components.
+ *
+ * @author Attila Szegedi
+ */
+public class LinkerCostAccounting {
+    private final ConcurrentMap<GuardingDynamicLinker, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Records a link request processed by a linker.
+     * @param linker the linker
+     * @param hit true if the linker produced an invocation for the request
+     * @param time the time the linker spent on the request, in nanoseconds
+     * @param adapters the number of method handle adaptations the linker requested from the linker services
+     */
+    void record(final GuardingDynamicLinker linker, final boolean hit, final long time, final int adapters) {
+        Counters c = counters.get(linker);
+        if(c == null) {
+            final Counters newCounters = new Counters();
+            c = counters.putIfAbsent(linker, newCounters);
+            if(c == null) {
+                c = newCounters;
+            }
+        }
+        c.requests.incrementAndGet();
+        if(hit) {
+            c.hits.incrementAndGet();
+        }
+        c.time.addAndGet(time);
+        c.adapters.addAndGet(adapters);
+    }
+
+    /**
+     * Returns snapshots of the link costs of all component linkers that processed at least one link request.
+     * @return snapshots of the link costs of component linkers.
+     */
+    public List<LinkerCost> getSnapshot() {
+        final List<LinkerCost> costs = new ArrayList<>(counters.size());
+        for(final Map.Entry<GuardingDynamicLinker, Counters> entry: counters.entrySet()) {
+            final Counters c = entry.getValue();
+            costs.add(new LinkerCost(entry.getKey(), c.requests.get(), c.hits.get(), c.time.get(), c.adapters.get()));
+        }
+        return costs;
+    }
+
+    /**
+     * Discards all recorded costs.
+     */
+    public void reset() {
+        counters.clear();
+    }
+
+    private static class Counters {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong time = new AtomicLong();
+        final AtomicLong adapters = new AtomicLong();
+    }
+}
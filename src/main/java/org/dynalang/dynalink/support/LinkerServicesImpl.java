@@ -69,10 +69,14 @@ public class LinkerServicesImpl implements LinkerServices {
 
     private static final RuntimePermission GET_CURRENT_LINK_REQUEST = new RuntimePermission("dynalink.getCurrentLinkRequest");
     private static final ThreadLocal<LinkRequest> threadLinkRequest = new ThreadLocal<>();
+    // Only set while a link request is processed; holds the component linker that answered it.
+    private static final ThreadLocal<GuardingDynamicLinker[]> threadAnsweringLinker = new ThreadLocal<>();
+    private static final ThreadLocal<int[]> threadAdapterCount = new ThreadLocal<>();
 
     private final TypeConverterFactory typeConverterFactory;
     private final GuardingDynamicLinker topLevelLinker;
     private final MethodHandleTransformer internalObjectsFilter;
+    private final LinkerCostAccounting linkerCostAccounting;
 
     /**
      * Creates a new linker services object.
@@ -84,9 +88,34 @@ public class LinkerServicesImpl implements LinkerServices {
      */
     public LinkerServicesImpl(final TypeConverterFactory typeConverterFactory,
             final GuardingDynamicLinker topLevelLinker, final MethodHandleTransformer internalObjectsFilter) {
+        this(typeConverterFactory, topLevelLinker, internalObjectsFilter, null);
+    }
+
+    /**
+     * Creates a new linker services object.
+     *
+     * @param typeConverterFactory the type converter factory exposed by the services.
+     * @param topLevelLinker the top level linker used by the services.
+     * @param internalObjectsFilter a method handle transformer that is supposed to act as the implementation of this
+     * services' {@link #filterInternalObjects(java.lang.invoke.MethodHandle)} method.
+     * @param linkerCostAccounting the object recording the link costs of component linkers. Can be null, in which case
+     * link costs are not recorded.
+     */
+    public LinkerServicesImpl(final TypeConverterFactory typeConverterFactory,
+            final GuardingDynamicLinker topLevelLinker, final MethodHandleTransformer internalObjectsFilter,
+            final LinkerCostAccounting linkerCostAccounting) {
         this.typeConverterFactory = typeConverterFactory;
         this.topLevelLinker = topLevelLinker;
         this.internalObjectsFilter = internalObjectsFilter;
+        this.linkerCostAccounting = linkerCostAccounting;
+    }
+
+    /**
+     * Returns the object recording the link costs of component linkers used by these services.
+     * @return the object recording the link costs of component linkers, or null if link costs are not recorded.
+     */
+    public LinkerCostAccounting getLinkerCostAccounting() {
+        return linkerCostAccounting;
     }
 
     @Override
@@ -96,6 +125,7 @@ public class LinkerServicesImpl implements LinkerServices {
 
     @Override
     public MethodHandle asType(final MethodHandle handle, final MethodType fromType) {
+        countAdapter();
         return typeConverterFactory.asType(handle, fromType);
     }
 
@@ -106,6 +136,7 @@ public class LinkerServicesImpl implements LinkerServices {
 
     @Override
     public MethodHandle getTypeConverter(final Class<?> sourceType, final Class<?> targetType) {
+        countAdapter();
         return typeConverterFactory.getTypeConverter(sourceType, targetType);
     }
 
@@ -116,18 +147,117 @@ public class LinkerServicesImpl implements LinkerServices {
 
     @Override
     public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest) throws Exception {
+        // Only link listeners need the answering linker; link costs are recorded by invokeLinker regardless.
         final LinkRequest prevLinkRequest = threadLinkRequest.get();
         threadLinkRequest.set(linkRequest);
         try {
-            return topLevelLinker.getGuardedInvocation(linkRequest, this);
+            return invokeLinker(topLevelLinker, linkRequest, this);
         } finally {
             threadLinkRequest.set(prevLinkRequest);
         }
     }
 
+    /**
+     * Same as {@link #getGuardedInvocation(LinkRequest)}, but also returns the component linker that produced the
+     * guarded invocation. If the top level linker is a {@link CompositeGuardingDynamicLinker} or a
+     * {@link CompositeTypeBasedGuardingDynamicLinker}, the innermost component linker that produced the invocation is
+     * returned.
+     * @param linkRequest the link request
+     * @return the guarded invocation and the component linker that produced it.
+     * @throws Exception if the linker throws an exception
+     */
+    public AnsweredInvocation getAnsweredInvocation(final LinkRequest linkRequest) throws Exception {
+        final LinkRequest prevLinkRequest = threadLinkRequest.get();
+        final GuardingDynamicLinker[] prevAnsweringLinker = threadAnsweringLinker.get();
+        final GuardingDynamicLinker[] answeringLinker = new GuardingDynamicLinker[1];
+        threadLinkRequest.set(linkRequest);
+        threadAnsweringLinker.set(answeringLinker);
+        try {
+            final GuardedInvocation invocation = invokeLinker(topLevelLinker, linkRequest, this);
+            if(invocation == null) {
+                return new AnsweredInvocation(null, null);
+            }
+            // If not set, it's not a composite linker, or a composite linker not reporting its components
+            return new AnsweredInvocation(invocation, answeringLinker[0] != null ? answeringLinker[0] : topLevelLinker);
+        } finally {
+            threadLinkRequest.set(prevLinkRequest);
+            if(prevAnsweringLinker == null) {
+                threadAnsweringLinker.remove();
+            } else {
+                threadAnsweringLinker.set(prevAnsweringLinker);
+            }
+        }
+    }
+
     @Override
     public MethodHandle filterInternalObjects(final MethodHandle target) {
-        return internalObjectsFilter != null ? internalObjectsFilter.transform(target) : target;
+        if(internalObjectsFilter == null) {
+            return target;
+        }
+        countAdapter();
+        return internalObjectsFilter.transform(target);
+    }
+
+    private void countAdapter() {
+        if(linkerCostAccounting != null) {
+            final int[] adapterCount = threadAdapterCount.get();
+            if(adapterCount != null) {
+                ++adapterCount[0];
+            }
+        }
+    }
+
+    /**
+     * Invoked by composite linkers to ask a component linker for a guarded invocation. Records the component linker
+     * as the answering linker if it produces an invocation, and records its link costs if the linker services have
+     * link cost accounting enabled. Nested composite linkers report and account for their own components, so they are
+     * neither reported nor accounted for.
+     * @param linker the linker to invoke.
+     * @param linkRequest the link request.
+     * @param linkerServices the linker services.
+     * @return the guarded invocation produced by the linker, or null.
+     * @throws Exception if the linker throws an exception.
+     */
+    static GuardedInvocation invokeLinker(final GuardingDynamicLinker linker, final LinkRequest linkRequest,
+            final LinkerServices linkerServices) throws Exception {
+        if(linker instanceof CompositeGuardingDynamicLinker || linker instanceof CompositeTypeBasedGuardingDynamicLinker) {
+            return linker.getGuardedInvocation(linkRequest, linkerServices);
+        }
+        final LinkerCostAccounting accounting = linkerServices instanceof LinkerServicesImpl ?
+                ((LinkerServicesImpl)linkerServices).linkerCostAccounting : null;
+        if(accounting == null) {
+            final GuardedInvocation invocation = linker.getGuardedInvocation(linkRequest, linkerServices);
+            if(invocation != null) {
+                setAnsweringLinker(linker);
+            }
+            return invocation;
+        }
+        final int[] prevAdapterCount = threadAdapterCount.get();
+        final int[] adapterCount = new int[1];
+        threadAdapterCount.set(adapterCount);
+        GuardedInvocation invocation = null;
+        final long start = System.nanoTime();
+        try {
+            invocation = linker.getGuardedInvocation(linkRequest, linkerServices);
+            if(invocation != null) {
+                setAnsweringLinker(linker);
+            }
+            return invocation;
+        } finally {
+            accounting.record(linker, invocation != null, System.nanoTime() - start, adapterCount[0]);
+            if(prevAdapterCount == null) {
+                threadAdapterCount.remove();
+            } else {
+                threadAdapterCount.set(prevAdapterCount);
+            }
+        }
+    }
+
+    private static void setAnsweringLinker(final GuardingDynamicLinker linker) {
+        final GuardingDynamicLinker[] answeringLinker = threadAnsweringLinker.get();
+        if(answeringLinker != null) {
+            answeringLinker[0] = linker;
+        }
     }
 
     /**
@@ -143,4 +273,33 @@ public class LinkerServicesImpl implements LinkerServices {
         }
         return threadLinkRequest.get();
     }
+
+    /**
+     * A guarded invocation together with the component linker that produced it.
+     */
+    public static class AnsweredInvocation {
+        private final GuardedInvocation invocation;
+        private final GuardingDynamicLinker linker;
+
+        AnsweredInvocation(final GuardedInvocation invocation, final GuardingDynamicLinker linker) {
+            this.invocation = invocation;
+            this.linker = linker;
+        }
+
+        /**
+         * Returns the guarded invocation.
+         * @return the guarded invocation, or null if no linker could link the request.
+         */
+        public GuardedInvocation getInvocation() {
+            return invocation;
+        }
+
+        /**
+         * Returns the component linker that produced the guarded invocation.
+         * @return the component linker that produced the guarded invocation, or null if there is no invocation.
+         */
+        public GuardingDynamicLinker getLinker() {
+            return linker;
+        }
+    }
 }
@@ -80,6 +80,7 @@ class LookupCallSiteDescriptor extends DefaultCallSiteDescriptor {
 
     @Override
     public CallSiteDescriptor changeMethodType(final MethodType newMethodType) {
-        return new LookupCallSiteDescriptor(getTokenizedName(), newMethodType, lookup);
+        return CallSiteDescriptorFactory.getCanonicalLookupDescriptor(new LookupCallSiteDescriptor(getTokenizedName(),
+                newMethodType, lookup));
     }
 }
@@ -54,6 +54,7 @@ package org.dynalang.dynalink.support;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
 import java.lang.invoke.WrongMethodTypeException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -79,20 +80,15 @@ public class TypeConverterFactory {
     private final GuardingTypeConverterFactory[] factories;
     private final ConversionComparator[] comparators;
     private final MethodTypeConversionStrategy autoConversionStrategy;
+    private final AdapterCache adapterCache = new AdapterCache();
 
-    private final ClassValue<ClassMap<MethodHandle>> converterMap = new ClassValue<ClassMap<MethodHandle>>() {
+    private final ClassValue<ClassMap<ConverterSlot>> converterMap = new ClassValue<ClassMap<ConverterSlot>>() {
         @Override
-        protected ClassMap<MethodHandle> computeValue(final Class<?> sourceType) {
-            return new ClassMap<MethodHandle>(getClassLoader(sourceType)) {
+        protected ClassMap<ConverterSlot> computeValue(final Class<?> sourceType) {
+            return new ClassMap<ConverterSlot>(getClassLoader(sourceType)) {
                 @Override
-                protected MethodHandle computeValue(final Class<?> targetType) {
-                    try {
-                        return createConverter(sourceType, targetType);
-                    } catch (final RuntimeException e) {
-                        throw e;
-                    } catch (final Exception e) {
-                        throw new RuntimeException(e);
-                    }
+                protected ConverterSlot computeValue(final Class<?> targetType) {
+                    return new ConverterSlot(sourceType, targetType);
                 }
             };
         }
@@ -104,12 +100,6 @@ public class TypeConverterFactory {
             return new ClassMap<MethodHandle>(getClassLoader(sourceType)) {
                 @Override
                 protected MethodHandle computeValue(final Class<?> targetType) {
-                    if(!canAutoConvert(sourceType, targetType)) {
-                        final MethodHandle converter = getCacheableTypeConverter(sourceType, targetType);
-                        if(converter != IDENTITY_CONVERSION) {
-                            return converter;
-                        }
-                    }
                     return IDENTITY_CONVERSION.asType(MethodType.methodType(targetType, sourceType));
                 }
             };
@@ -134,6 +124,24 @@ public class TypeConverterFactory {
         }
     };
 
+    private final ClassValue<ClassMap<ClassMap<Comparison>>> comparisons = new ClassValue<ClassMap<ClassMap<Comparison>>>() {
+        @Override
+        protected ClassMap<ClassMap<Comparison>> computeValue(final Class<?> sourceType) {
+            final ClassLoader classLoader = getClassLoader(sourceType);
+            return new ClassMap<ClassMap<Comparison>>(classLoader) {
+                @Override
+                protected ClassMap<Comparison> computeValue(final Class<?> targetType1) {
+                    return new ClassMap<Comparison>(classLoader) {
+                        @Override
+                        protected Comparison computeValue(final Class<?> targetType2) {
+                            return compareConversionUncached(sourceType, targetType1, targetType2);
+                        }
+                    };
+                }
+            };
+        }
+    };
+
     private static final ClassLoader getClassLoader(final Class<?> clazz) {
         return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
             @Override
@@ -187,7 +195,9 @@ public class TypeConverterFactory {
      * conversions, it will invoke {@link MethodTypeConversionStrategy#asType(MethodHandle, MethodType)} first
      * if an automatic conversion strategy was specified in the
      * {@link #TypeConverterFactory(Iterable, MethodTypeConversionStrategy) constructor}, and finally apply
-     * {@link MethodHandle#asType(MethodType)} for any remaining conversions.
+     * {@link MethodHandle#asType(MethodType)} for any remaining conversions. Adapted method handles are cached, so
+     * adapting the same method handle to the same type again returns the same adapted method handle as long as it is
+     * still reachable and none of the converters it incorporates are non-cacheable.
      *
      * @param handle target method handle
      * @param fromType the types of source arguments
@@ -197,6 +207,11 @@ public class TypeConverterFactory {
      * {@link GuardingTypeConverterFactory} produced type converters as filters.
      */
     public MethodHandle asType(final MethodHandle handle, final MethodType fromType) {
+        final MethodHandle cachedHandle = adapterCache.get(handle, fromType);
+        if(cachedHandle != null) {
+            return cachedHandle;
+        }
+        boolean cacheable = true;
         MethodHandle newHandle = handle;
         final MethodType toType = newHandle.type();
         final int l = toType.parameterCount();
@@ -211,12 +226,13 @@ public class TypeConverterFactory {
             if(canAutoConvert(fromParamType, toParamType)) {
                 newHandle = applyConverters(newHandle, pos, converters);
             } else {
-                final MethodHandle converter = getTypeConverterNull(fromParamType, toParamType);
-                if(converter != null) {
+                final Converter converter = getConverter(fromParamType, toParamType);
+                cacheable &= converter.isCacheable();
+                if(converter.converter != null) {
                     if(converters.isEmpty()) {
                         pos = i;
                     }
-                    converters.add(converter);
+                    converters.add(converter.converter);
                 } else {
                     newHandle = applyConverters(newHandle, pos, converters);
                 }
@@ -229,9 +245,10 @@ public class TypeConverterFactory {
         final Class<?> toRetType = toType.returnType();
         if(fromRetType != Void.TYPE && toRetType != Void.TYPE) {
             if(!canAutoConvert(toRetType, fromRetType)) {
-                final MethodHandle converter = getTypeConverterNull(toRetType, fromRetType);
-                if(converter != null) {
-                    newHandle = MethodHandles.filterReturnValue(newHandle, converter);
+                final Converter converter = getConverter(toRetType, fromRetType);
+                cacheable &= converter.isCacheable();
+                if(converter.converter != null) {
+                    newHandle = MethodHandles.filterReturnValue(newHandle, converter.converter);
                 }
             }
         }
@@ -241,7 +258,11 @@ public class TypeConverterFactory {
                 autoConversionStrategy != null ? autoConversionStrategy.asType(newHandle, fromType) : newHandle;
 
         // Do a final asType for any conversions that remain.
-        return autoConvertedHandle.asType(fromType);
+        final MethodHandle adaptedHandle = autoConvertedHandle.asType(fromType);
+        if(!cacheable || adaptedHandle == handle) {
+            return adaptedHandle;
+        }
+        return adapterCache.put(handle, fromType, adaptedHandle);
     }
 
     private static MethodHandle applyConverters(final MethodHandle handle, final int pos, final List<MethodHandle> converters) {
@@ -273,6 +294,7 @@ public class TypeConverterFactory {
      * Determines which of the two type conversions from a source type to the two target types is preferred. This is
      * used for dynamic overloaded method resolution. If the source type is convertible to exactly one target type with
      * a method invocation conversion, it is chosen, otherwise available {@link ConversionComparator}s are consulted.
+     * The results are cached, so the comparators are consulted only once for every combination of types.
      * @param sourceType the source type.
      * @param targetType1 one potential target type
      * @param targetType2 another potential target type.
@@ -280,6 +302,11 @@ public class TypeConverterFactory {
      * conversion.
      */
     public Comparison compareConversion(final Class<?> sourceType, final Class<?> targetType1, final Class<?> targetType2) {
+        return comparisons.get(sourceType).get(targetType1).get(targetType2);
+    }
+
+    /*private*/ Comparison compareConversionUncached(final Class<?> sourceType, final Class<?> targetType1,
+            final Class<?> targetType2) {
         for(final ConversionComparator comparator: comparators) {
             final Comparison result = comparator.compareConversion(sourceType, targetType1, targetType2);
             if(result != Comparison.INDETERMINATE) {
@@ -307,21 +334,12 @@ public class TypeConverterFactory {
         return TypeUtilities.isMethodInvocationConvertible(fromType, toType);
     }
 
-    /*private*/ MethodHandle getCacheableTypeConverterNull(final Class<?> sourceType, final Class<?> targetType) {
-        final MethodHandle converter = getCacheableTypeConverter(sourceType, targetType);
-        return converter == IDENTITY_CONVERSION ? null : converter;
-    }
-
     /*private*/ MethodHandle getTypeConverterNull(final Class<?> sourceType, final Class<?> targetType) {
-        try {
-            return getCacheableTypeConverterNull(sourceType, targetType);
-        } catch(final NotCacheableConverter e) {
-            return e.converter;
-        }
+        return getConverter(sourceType, targetType).converter;
     }
 
-    /*private*/ MethodHandle getCacheableTypeConverter(final Class<?> sourceType, final Class<?> targetType) {
-        return converterMap.get(sourceType).get(targetType);
+    private Converter getConverter(final Class<?> sourceType, final Class<?> targetType) {
+        return converterMap.get(sourceType).get(targetType).getConverter();
     }
 
     /**
@@ -334,45 +352,117 @@ public class TypeConverterFactory {
      * @return a method handle performing the conversion.
      */
     public MethodHandle getTypeConverter(final Class<?> sourceType, final Class<?> targetType) {
-        try {
-            return converterIdentityMap.get(sourceType).get(targetType);
-        } catch(final NotCacheableConverter e) {
-            return e.converter;
+        if(!canAutoConvert(sourceType, targetType)) {
+            final MethodHandle converter = getTypeConverterNull(sourceType, targetType);
+            if(converter != null) {
+                return converter;
+            }
         }
+        return converterIdentityMap.get(sourceType).get(targetType);
     }
 
-    /*private*/ MethodHandle createConverter(final Class<?> sourceType, final Class<?> targetType) throws Exception {
+    /*private*/ Converter createConverter(final Class<?> sourceType, final Class<?> targetType) throws Exception {
         final MethodType type = MethodType.methodType(targetType, sourceType);
         final MethodHandle identity = IDENTITY_CONVERSION.asType(type);
         MethodHandle last = identity;
         boolean cacheable = true;
+        boolean reusable = true;
+        final List<SwitchPoint> switchPoints = new LinkedList<>();
         for(int i = factories.length; i-- > 0;) {
             final GuardedTypeConversion next = factories[i].convertToType(sourceType, targetType);
             if(next != null) {
-                cacheable = cacheable && next.isCacheable();
+                if(!next.isCacheable()) {
+                    cacheable = false;
+                    final SwitchPoint cacheSwitchPoint = next.getCacheSwitchPoint();
+                    if(cacheSwitchPoint == null) {
+                        reusable = false;
+                    } else {
+                        switchPoints.add(cacheSwitchPoint);
+                    }
+                }
                 final GuardedInvocation conversionInvocation = next.getConversionInvocation();
                 conversionInvocation.assertType(type);
                 last = conversionInvocation.compose(last);
             }
         }
-        if(last == identity) {
-            return IDENTITY_CONVERSION;
-        }
+        final MethodHandle converter = last == identity ? null : last;
         if(cacheable) {
-            return last;
+            return new Converter(converter, null);
         }
-        throw new NotCacheableConverter(last);
+        return new Converter(converter, reusable ? switchPoints.toArray(new SwitchPoint[switchPoints.size()]) :
+            NOT_REUSABLE);
     }
 
     /*private*/ static final MethodHandle IDENTITY_CONVERSION = MethodHandles.identity(Object.class);
 
-    @SuppressWarnings("serial")
-    private static class NotCacheableConverter extends RuntimeException {
+    private static final SwitchPoint[] NOT_REUSABLE = new SwitchPoint[0];
+
+    /**
+     * A converter created by the factory, along with the information for how long it can be reused.
+     */
+    private static class Converter {
+        // null for identity conversion
         final MethodHandle converter;
+        // null if cacheable, otherwise switch points that invalidate it (no switch points: it's not reusable at all)
+        final SwitchPoint[] switchPoints;
 
-        NotCacheableConverter(final MethodHandle converter) {
-            super("", null, false, false);
+        Converter(final MethodHandle converter, final SwitchPoint[] switchPoints) {
             this.converter = converter;
+            this.switchPoints = switchPoints;
+        }
+
+        boolean isCacheable() {
+            return switchPoints == null;
+        }
+
+        boolean isReusable() {
+            if(switchPoints == null) {
+                return true;
+            }
+            if(switchPoints.length == 0) {
+                return false;
+            }
+            for(final SwitchPoint switchPoint: switchPoints) {
+                if(switchPoint.hasBeenInvalidated()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Holds the converter for a pair of source and target types. Cacheable converters are created once and kept
+     * forever; non-cacheable converters are kept until any of their cache switch points are invalidated, and are
+     * created again on every request if any of their conversions doesn't have a cache switch point.
+     */
+    private class ConverterSlot {
+        private final Class<?> sourceType;
+        private final Class<?> targetType;
+        private volatile Converter converter;
+
+        ConverterSlot(final Class<?> sourceType, final Class<?> targetType) {
+            this.sourceType = sourceType;
+            this.targetType = targetType;
+        }
+
+        Converter getConverter() {
+            final Converter c = converter;
+            if(c != null && c.isReusable()) {
+                return c;
+            }
+            final Converter newConverter;
+            try {
+                newConverter = createConverter(sourceType, targetType);
+            } catch (final RuntimeException e) {
+                throw e;
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+            if(newConverter.isCacheable() || newConverter.isReusable()) {
+                converter = newConverter;
+            }
+            return newConverter;
         }
     }
 }
@@ -0,0 +1,266 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+import junit.framework.TestCase;
+import org.dynalang.dynalink.linker.GuardedInvocation;
+import org.dynalang.dynalink.linker.GuardingDynamicLinker;
+import org.dynalang.dynalink.linker.LinkRequest;
+import org.dynalang.dynalink.linker.LinkerServices;
+import org.dynalang.dynalink.support.AdaptiveChainLengthPolicy;
+import org.dynalang.dynalink.support.CallSiteDescriptorFactory;
+import org.dynalang.dynalink.support.Guards;
+import org.dynalang.dynalink.support.Lookup;
+
+/**
+ * Tests for the {@link ChainedCallSite}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestChainedCallSite extends TestCase {
+    private static final MethodType TYPE = MethodType.methodType(String.class, Object.class);
+    private static final Object[] RECEIVERS = new Object[] { "", Integer.valueOf(0), Long.valueOf(0), Short.valueOf(
+            (short)0), Byte.valueOf((byte)0), Float.valueOf(0), Double.valueOf(0), Character.valueOf(' '),
+            Boolean.TRUE, new Object(), new StringBuilder(), new StringBuffer(), new int[0], new Object[0],
+            new long[0], new java.util.ArrayList<Object>(), new java.util.LinkedList<Object>(),
+            new java.util.HashMap<Object, Object>(), new java.util.TreeMap<Object, Object>(), new Thread(), null };
+
+    /**
+     * Tests that a chained call site evicts old linkages when its chain overflows and megamorphic dispatch is not
+     * enabled.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testEvictsWithoutMegamorphicDispatch() throws Throwable {
+        final ClassNameLinker linker = new ClassNameLinker();
+        final ChainedCallSite callSite = createDynamicLinker(linker).link(new ChainedCallSite(createDescriptor()));
+        invokeAll(callSite);
+        invokeAll(callSite);
+        assertFalse(callSite.isMegamorphic());
+        assertEquals(2 * RECEIVERS.length, linker.linkCount);
+    }
+
+    /**
+     * Tests that a chained call site with megamorphic dispatch enabled stops relinking once all receiver classes have
+     * been seen.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testMegamorphicDispatch() throws Throwable {
+        final ClassNameLinker linker = new ClassNameLinker();
+        final ChainedCallSite callSite = createDynamicLinker(linker).link(new ChainedCallSite(createDescriptor()) {
+            @Override
+            protected boolean isMegamorphicDispatchEnabled() {
+                return true;
+            }
+        });
+        invokeAll(callSite);
+        assertTrue(callSite.isMegamorphic());
+        invokeAll(callSite);
+        final MethodHandle target = callSite.getTarget();
+        final int linkCount = linker.linkCount;
+        invokeAll(callSite);
+        assertEquals(linkCount, linker.linkCount);
+        assertSame(target, callSite.getTarget());
+    }
+
+    /**
+     * Tests that a megamorphic chained call site adds invocations to the chains of receiver classes even if it is
+     * linked on a different thread than the one that invoked it.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testMegamorphicDispatchWithBackgroundLinking() throws Throwable {
+        final ClassNameLinker linker = new ClassNameLinker();
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(linker);
+        factory.setFallbackLinkers();
+        // Links on a new thread, and waits for it to finish so the test is deterministic
+        factory.setAsynchronousLinking(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                final Thread t = new Thread(command);
+                t.start();
+                try {
+                    t.join();
+                } catch(final InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }, new ClassNameLinker());
+        final ChainedCallSite callSite = factory.createLinker().link(new ChainedCallSite(createDescriptor()) {
+            @Override
+            protected boolean isMegamorphicDispatchEnabled() {
+                return true;
+            }
+        });
+        invokeAll(callSite);
+        assertTrue(callSite.isMegamorphic());
+        invokeAll(callSite);
+        final int linkCount = linker.linkCount;
+        invokeAll(callSite);
+        assertEquals(linkCount, linker.linkCount);
+    }
+
+    /**
+     * Tests that a chained call site with profiling enabled reorders its chain so that the most frequently hit
+     * invocation is tested first.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testProfileGuidedOrdering() throws Throwable {
+        final ClassNameLinker linker = new ClassNameLinker();
+        final ChainedCallSite callSite = createDynamicLinker(linker).link(new ChainedCallSite(createDescriptor()) {
+            @Override
+            protected int getProfilingThreshold() {
+                return 10;
+            }
+        });
+        final MethodHandle invoker = callSite.dynamicInvoker();
+        // Link the dominant type first, so that it ends up at the end of the chain
+        assertEquals("java.lang.String", (String)invoker.invokeExact((Object)""));
+        assertEquals("java.lang.Integer", (String)invoker.invokeExact((Object)Integer.valueOf(1)));
+        assertEquals("java.lang.Long", (String)invoker.invokeExact((Object)Long.valueOf(1)));
+        linker.guardTests = 0;
+        assertEquals("java.lang.String", (String)invoker.invokeExact((Object)""));
+        assertEquals(3, linker.guardTests);
+        for(int i = 0; i < 10; ++i) {
+            assertEquals("java.lang.String", (String)invoker.invokeExact((Object)""));
+        }
+        linker.guardTests = 0;
+        assertEquals("java.lang.String", (String)invoker.invokeExact((Object)""));
+        assertEquals(1, linker.guardTests);
+        assertEquals(3, linker.linkCount);
+    }
+
+    /**
+     * Tests that with an adaptive chain length policy, a monomorphic call site keeps a chain of length 1 and a
+     * polymorphic call site grows its chain so that it stops relinking.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testAdaptiveChainLength() throws Throwable {
+        final ClassNameLinker linker = new ClassNameLinker();
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(linker);
+        factory.setFallbackLinkers();
+        factory.setChainLengthPolicy(new AdaptiveChainLengthPolicy());
+        final DynamicLinker dynamicLinker = factory.createLinker();
+
+        final ChainedCallSite monomorphic = dynamicLinker.link(new ChainedCallSite(createDescriptor()));
+        final MethodHandle monomorphicInvoker = monomorphic.dynamicInvoker();
+        for(int i = 0; i < 3; ++i) {
+            assertEquals("java.lang.String", (String)monomorphicInvoker.invokeExact((Object)""));
+        }
+        assertEquals(1, monomorphic.getCurrentMaxChainLength());
+
+        final ChainedCallSite polymorphic = dynamicLinker.link(new ChainedCallSite(createDescriptor()));
+        final MethodHandle polymorphicInvoker = polymorphic.dynamicInvoker();
+        final Object[] receivers = new Object[] { "", Integer.valueOf(0), Long.valueOf(0), Double.valueOf(0),
+                Boolean.TRUE };
+        linker.linkCount = 0;
+        for(int i = 0; i < 3; ++i) {
+            for(final Object receiver: receivers) {
+                assertEquals(receiver.getClass().getName(), (String)polymorphicInvoker.invokeExact(receiver));
+            }
+        }
+        assertEquals(receivers.length, linker.linkCount);
+        assertEquals(8, polymorphic.getCurrentMaxChainLength());
+    }
+
+    private static void invokeAll(final ChainedCallSite callSite) throws Throwable {
+        final MethodHandle invoker = callSite.dynamicInvoker();
+        for(final Object receiver: RECEIVERS) {
+            assertEquals(String.valueOf(receiver == null ? null : receiver.getClass().getName()),
+                    (String)invoker.invokeExact(receiver));
+        }
+    }
+
+    private static CallSiteDescriptor createDescriptor() {
+        return CallSiteDescriptorFactory.create(MethodHandles.publicLookup(), "dyn:getClassName", TYPE);
+    }
+
+    private static DynamicLinker createDynamicLinker(final GuardingDynamicLinker linker) {
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(linker);
+        factory.setFallbackLinkers();
+        return factory.createLinker();
+    }
+
+    private static class ClassNameLinker implements GuardingDynamicLinker {
+        private static final MethodHandle IS_OF_CLASS = Lookup.findOwnStatic(MethodHandles.lookup(), "isOfClass",
+                boolean.class, ClassNameLinker.class, Class.class, Object.class);
+
+        int linkCount;
+        int guardTests;
+
+        @Override
+        public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest, final LinkerServices linkerServices) {
+            ++linkCount;
+            final Object receiver = linkRequest.getReceiver();
+            final MethodType type = linkRequest.getCallSiteDescriptor().getMethodType();
+            if(receiver == null) {
+                return new GuardedInvocation(MethodHandles.dropArguments(MethodHandles.constant(String.class, "null"),
+                        0, type.parameterList()), Guards.isNull().asType(type.changeReturnType(boolean.class)));
+            }
+            final Class<?> clazz = receiver.getClass();
+            return new GuardedInvocation(MethodHandles.dropArguments(MethodHandles.constant(String.class,
+                    clazz.getName()), 0, type.parameterList()), MethodHandles.insertArguments(IS_OF_CLASS, 0, this,
+                    clazz));
+        }
+
+        @SuppressWarnings("unused")
+        private static boolean isOfClass(final ClassNameLinker linker, final Class<?> clazz, final Object obj) {
+            ++linker.guardTests;
+            return obj != null && obj.getClass() == clazz;
+        }
+    }
+}
@@ -0,0 +1,600 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+import org.dynalang.dynalink.linker.GuardedInvocation;
+import org.dynalang.dynalink.linker.GuardingDynamicLinker;
+import org.dynalang.dynalink.linker.LinkRequest;
+import org.dynalang.dynalink.linker.LinkerServices;
+import org.dynalang.dynalink.linker.TypeBasedGuardingDynamicLinker;
+import org.dynalang.dynalink.support.CallSiteDescriptorFactory;
+import org.dynalang.dynalink.support.CallSiteInfo;
+import org.dynalang.dynalink.support.CallSiteRegistry;
+import org.dynalang.dynalink.support.GuardCounter;
+import org.dynalang.dynalink.support.Guards;
+import org.dynalang.dynalink.support.LinkProfile;
+import org.dynalang.dynalink.support.LinkerCost;
+import org.dynalang.dynalink.support.LinkerCostAccounting;
+
+/**
+ * Tests for the {@link DynamicLinker}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestDynamicLinker extends TestCase {
+    private static final MethodType TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * Tests that with asynchronous linking, invocations go through the interim linker until the call site is linked in
+     * the background.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testAsynchronousLinking() throws Throwable {
+        final QueueExecutor executor = new QueueExecutor();
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(new ConstantLinker("specialized"));
+        factory.setFallbackLinkers();
+        factory.setAsynchronousLinking(executor, new ConstantLinker("generic"));
+        final MonomorphicCallSite callSite = factory.createLinker().link(new MonomorphicCallSite(
+                CallSiteDescriptorFactory.create(MethodHandles.publicLookup(), "dyn:foo", TYPE)));
+        final MethodHandle invoker = callSite.dynamicInvoker();
+
+        assertEquals("generic", invoker.invokeExact((Object)""));
+        assertEquals("generic", invoker.invokeExact((Object)""));
+        // Only one background link is scheduled for the call site
+        assertEquals(1, executor.tasks.size());
+        executor.tasks.removeFirst().run();
+        assertEquals("specialized", invoker.invokeExact((Object)""));
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    /**
+     * Tests that when linking in the background fails, the next invocation links the call site synchronously and the
+     * failure reaches the caller.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testAsynchronousLinkingFailure() throws Throwable {
+        final QueueExecutor executor = new QueueExecutor();
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(new DecliningLinker());
+        factory.setFallbackLinkers();
+        factory.setAsynchronousLinking(executor, new ConstantLinker("generic"));
+        final MonomorphicCallSite callSite = factory.createLinker().link(new MonomorphicCallSite(
+                CallSiteDescriptorFactory.create(MethodHandles.publicLookup(), "dyn:foo", TYPE)));
+        final MethodHandle invoker = callSite.dynamicInvoker();
+
+        assertEquals("generic", invoker.invokeExact((Object)""));
+        // Fails with NoSuchDynamicMethodException (logged)
+        final Logger logger = Logger.getLogger(DynamicLinker.class.getName());
+        final Level level = logger.getLevel();
+        logger.setLevel(Level.OFF);
+        try {
+            executor.tasks.removeFirst().run();
+        } finally {
+            logger.setLevel(level);
+        }
+        try {
+            final Object result = invoker.invokeExact((Object)"");
+            fail("Linked to " + result);
+        } catch(final NoSuchDynamicMethodException e) {
+            // Expected
+        }
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    /**
+     * Tests that with single-flight relinking, concurrent misses on the same call site consult the linker only once,
+     * and all waiting threads invoke the target installed by the linking thread.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testSingleFlightRelink() throws Throwable {
+        final BlockingLinker linker = new BlockingLinker(false);
+        final Object[] results = invokeConcurrently(linker, 8);
+        assertEquals(1, linker.count.get());
+        for(final Object result: results) {
+            assertEquals("linked", result);
+        }
+    }
+
+    /**
+     * Tests that with single-flight relinking, when the linking thread fails, the exception is only thrown on that
+     * thread, and the waiting threads link the call site again.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testSingleFlightRelinkFailure() throws Throwable {
+        final BlockingLinker linker = new BlockingLinker(true);
+        final Object[] results = invokeConcurrently(linker, 8);
+        // The failed linking and one more by one of the waiters
+        assertEquals(2, linker.count.get());
+        int failures = 0;
+        for(final Object result: results) {
+            if(result instanceof BlockingLinker.LinkFailure) {
+                ++failures;
+            } else {
+                assertEquals("linked", result);
+            }
+        }
+        assertEquals(1, failures);
+    }
+
+    private static Object[] invokeConcurrently(final BlockingLinker linker, final int threadCount) throws Exception {
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(linker);
+        factory.setFallbackLinkers();
+        factory.setSingleFlightRelinkTimeout(60000);
+        final MethodHandle invoker = factory.createLinker().link(new MonomorphicCallSite(
+                CallSiteDescriptorFactory.create(MethodHandles.publicLookup(), "dyn:foo", TYPE))).dynamicInvoker();
+        final Object[] results = new Object[threadCount];
+        final CountDownLatch started = new CountDownLatch(threadCount);
+        final Thread[] threads = new Thread[threadCount];
+        for(int i = 0; i < threadCount; ++i) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        results[index] = invoker.invokeExact((Object)"");
+                    } catch(final Throwable t) {
+                        results[index] = t;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        started.await();
+        // Give the threads some time to miss on the call site and start waiting for the linking thread
+        Thread.sleep(100);
+        linker.release.countDown();
+        for(final Thread t: threads) {
+            t.join();
+        }
+        return results;
+    }
+
+    /**
+     * Tests that the call site registry records linked call sites.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testCallSiteRegistry() throws Throwable {
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(new ConstantLinker("x"));
+        factory.setFallbackLinkers();
+        factory.setCallSiteRegistryEnabled(true);
+        final DynamicLinker linker = factory.createLinker();
+        final CallSiteDescriptor descriptor = CallSiteDescriptorFactory.create(MethodHandles.publicLookup(),
+                "dyn:foo", TYPE);
+        final ChainedCallSite callSite = linker.link(new ChainedCallSite(descriptor));
+        final MethodHandle invoker = callSite.dynamicInvoker();
+
+        final CallSiteRegistry registry = linker.getCallSiteRegistry();
+        assertEquals(1, registry.getCallSiteCount());
+        assertEquals(0, registry.getCallSites().get(0).getChainLength());
+
+        assertEquals("x", invoker.invokeExact((Object)""));
+        final CallSiteInfo info = registry.getCallSites().get(0);
+        assertSame(descriptor, info.getDescriptor());
+        assertEquals(1, info.getRelinkCount());
+        assertEquals(1, info.getChainLength());
+        assertFalse(info.isUnstable());
+        assertEquals(Collections.singletonList(String.class.getName()), info.getReceiverClasses());
+        assertEquals(1L, registry.getTotalRelinkCount());
+        assertTrue(registry.dump().contains("dyn:foo"));
+    }
+
+    /**
+     * Tests that with guard instrumentation enabled, passes and failures of the guards of linked invocations are
+     * counted per call site.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testGuardInstrumentation() throws Throwable {
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(new CountingLinker());
+        factory.setFallbackLinkers();
+        factory.setGuardInstrumentationEnabled(true);
+        final DynamicLinker linker = factory.createLinker();
+        final MethodHandle invoker = linker.link(new ChainedCallSite(CallSiteDescriptorFactory.create(
+                MethodHandles.publicLookup(), "dyn:foo", TYPE))).dynamicInvoker();
+        assertEquals("java.lang.String", invoker.invokeExact((Object)"a"));
+        assertEquals("java.lang.Integer", invoker.invokeExact((Object)Integer.valueOf(1)));
+        assertEquals("java.lang.String", invoker.invokeExact((Object)"b"));
+
+        final List<GuardCounter> counters = linker.getCallSiteRegistry().getCallSites().get(0).getGuardCounters();
+        assertEquals(2, counters.size());
+        final GuardCounter stringCounter = counters.get(0);
+        assertEquals("java.lang.String", stringCounter.getReceiverClass());
+        assertEquals(1, stringCounter.getPasses());
+        assertEquals(1, stringCounter.getFailures());
+        final GuardCounter integerCounter = counters.get(1);
+        assertEquals("java.lang.Integer", integerCounter.getReceiverClass());
+        assertEquals(0, integerCounter.getPasses());
+        assertEquals(1, integerCounter.getFailures());
+    }
+
+    /**
+     * Tests that a pre-linked call site doesn't need to be linked on its first invocation.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testPrelink() throws Throwable {
+        final CountingLinker linker = new CountingLinker();
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(linker);
+        factory.setFallbackLinkers();
+        final ChainedCallSite callSite = factory.createLinker().prelink(new ChainedCallSite(
+                CallSiteDescriptorFactory.create(MethodHandles.publicLookup(), "dyn:foo", TYPE)),
+                new Object[] { "" }, new Object[] { Integer.valueOf(0) });
+        assertEquals(2, linker.linkCount);
+        assertEquals(2, callSite.getChainLength());
+        final MethodHandle invoker = callSite.dynamicInvoker();
+        assertEquals("java.lang.String", invoker.invokeExact((Object)"a"));
+        assertEquals("java.lang.Integer", invoker.invokeExact((Object)Integer.valueOf(1)));
+        assertEquals(2, linker.linkCount);
+    }
+
+    /**
+     * Tests that pre-linking with more samples than the unstable relink threshold doesn't make the call site unstable,
+     * but that its relinks after pre-linking do.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testPrelinkBelowUnstableThreshold() throws Throwable {
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(new CountingLinker());
+        factory.setFallbackLinkers();
+        factory.setUnstableRelinkThreshold(1);
+        final ChainedCallSite callSite = factory.createLinker().prelink(new ChainedCallSite(
+                CallSiteDescriptorFactory.create(MethodHandles.publicLookup(), "dyn:foo", TYPE)),
+                new Object[] { "" }, new Object[] { Integer.valueOf(0) }, new Object[] { Boolean.TRUE });
+        assertEquals(3, callSite.getChainLength());
+        final MethodHandle invoker = callSite.dynamicInvoker();
+        assertEquals("java.lang.Long", invoker.invokeExact((Object)Long.valueOf(0)));
+        // Became unstable, so the chain was reset
+        assertEquals(1, callSite.getChainLength());
+    }
+
+    /**
+     * Tests that links are recorded into a link profile, that the profile survives saving and loading, and that a
+     * loaded profile warms up the linkers for the recorded receiver classes.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testLinkProfile() throws Throwable {
+        final LinkProfile profile = new LinkProfile();
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(new ConstantLinker("x"));
+        factory.setFallbackLinkers();
+        factory.setLinkProfile(profile, null);
+        final DynamicLinker linker = factory.createLinker();
+        final MethodHandle invoker = linker.link(new ChainedCallSite(CallSiteDescriptorFactory.create(
+                MethodHandles.publicLookup(), "dyn:foo", TYPE))).dynamicInvoker();
+        assertEquals("x", invoker.invokeExact((Object)""));
+        assertEquals(1, profile.getEntries().size());
+        // Linking another call site with the same descriptor for the same receiver class adds no entry
+        final MethodHandle otherInvoker = linker.link(new ChainedCallSite(CallSiteDescriptorFactory.create(
+                MethodHandles.publicLookup(), "dyn:foo", TYPE))).dynamicInvoker();
+        assertEquals("x", otherInvoker.invokeExact((Object)"y"));
+        assertEquals(1, profile.getEntries().size());
+        final LinkProfile.Entry entry = profile.getEntries().get(0);
+        assertEquals("dyn:foo", entry.getName());
+        assertEquals(TYPE, entry.getMethodType(null));
+        assertEquals(String.class.getName(), entry.getReceiverClassName());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        profile.save(out);
+        final LinkProfile loadedProfile = new LinkProfile();
+        loadedProfile.load(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(profile.getEntries(), loadedProfile.getEntries());
+
+        final List<Class<?>> introspected = new ArrayList<>();
+        final QueueExecutor executor = new QueueExecutor();
+        final DynamicLinkerFactory warmFactory = new DynamicLinkerFactory();
+        warmFactory.setPrioritizedLinker(new TypeBasedGuardingDynamicLinker() {
+            @Override
+            public boolean canLinkType(final Class<?> type) {
+                introspected.add(type);
+                return false;
+            }
+
+            @Override
+            public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest,
+                    final LinkerServices linkerServices) {
+                return null;
+            }
+        });
+        warmFactory.setFallbackLinkers();
+        warmFactory.setLinkProfile(loadedProfile, executor);
+        warmFactory.createLinker();
+        assertEquals(1, executor.tasks.size());
+        assertTrue(introspected.isEmpty());
+        executor.tasks.removeFirst().run();
+        assertEquals(Collections.<Class<?>>singletonList(String.class), introspected);
+    }
+
+    /**
+     * Tests that a call site that keeps relinking after it became unstable reuses the same fallback method handle
+     * instead of having a new one created on every relink.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testUnstableCallSiteReusesFallback() throws Throwable {
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(new CountingLinker());
+        factory.setFallbackLinkers();
+        factory.setUnstableRelinkThreshold(2);
+        final List<MethodHandle> fallbacks = new ArrayList<>();
+        final MonomorphicCallSite callSite = factory.createLinker().link(new MonomorphicCallSite(
+                CallSiteDescriptorFactory.create(MethodHandles.publicLookup(), "dyn:foo", TYPE)) {
+            @Override
+            public void relink(final GuardedInvocation guardedInvocation, final MethodHandle relink) {
+                fallbacks.add(relink);
+                super.relink(guardedInvocation, relink);
+            }
+        });
+        final MethodHandle invoker = callSite.dynamicInvoker();
+        final Object[] receivers = new Object[] { "", Integer.valueOf(0), Long.valueOf(0), Boolean.TRUE, "" };
+        for(final Object receiver: receivers) {
+            assertEquals(receiver.getClass().getName(), invoker.invokeExact(receiver));
+        }
+        assertEquals(receivers.length, fallbacks.size());
+        // Relink counts 1, 2 and 3 (threshold + 1) get their own fallbacks, after that the fallback is reused.
+        assertNotSame(fallbacks.get(0), fallbacks.get(1));
+        assertNotSame(fallbacks.get(1), fallbacks.get(2));
+        assertSame(fallbacks.get(2), fallbacks.get(3));
+        assertSame(fallbacks.get(3), fallbacks.get(4));
+    }
+
+    /**
+     * Tests that a link listener is notified of every linking with the component linker that produced the invocation,
+     * the chain length, and the transition to unstable.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testLinkListener() throws Throwable {
+        final CountingLinker countingLinker = new CountingLinker();
+        final List<LinkEvent> events = new ArrayList<>();
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinkers(new GuardingDynamicLinker() {
+            @Override
+            public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest,
+                    final LinkerServices linkerServices) {
+                return null;
+            }
+        }, countingLinker);
+        factory.setFallbackLinkers();
+        factory.setUnstableRelinkThreshold(1);
+        factory.setLinkListener(new LinkListener() {
+            @Override
+            public void linked(final LinkEvent event) {
+                events.add(event);
+            }
+        });
+        final CallSiteDescriptor descriptor = CallSiteDescriptorFactory.create(MethodHandles.publicLookup(),
+                "dyn:foo", TYPE);
+        final MethodHandle invoker = factory.createLinker().link(new ChainedCallSite(descriptor)).dynamicInvoker();
+        assertEquals("java.lang.Integer", invoker.invokeExact((Object)Integer.valueOf(0)));
+        assertEquals("java.lang.Long", invoker.invokeExact((Object)Long.valueOf(0)));
+        assertEquals(2, events.size());
+
+        final LinkEvent first = events.get(0);
+        assertSame(descriptor, first.getDescriptor());
+        assertSame(Integer.class, first.getReceiverClass());
+        assertSame(countingLinker, first.getLinker());
+        assertEquals(0, first.getRelinkCount());
+        assertEquals(1, first.getChainLength());
+        assertFalse(first.isUnstableTransition());
+        assertTrue(first.getDuration() >= 0);
+
+        final LinkEvent second = events.get(1);
+        assertSame(Long.class, second.getReceiverClass());
+        assertEquals(1, second.getRelinkCount());
+        // Became unstable, so the chain was reset
+        assertTrue(second.isUnstableTransition());
+        assertEquals(1, second.getChainLength());
+    }
+
+    /**
+     * Tests that with the linker decision cache enabled, linkers that declined to link a receiver class and operation
+     * are not asked again once another linker produced an invocation for them.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testLinkerDecisionCache() throws Throwable {
+        final DecliningLinker decliningLinker = new DecliningLinker();
+        final CountingLinker countingLinker = new CountingLinker();
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinkers(decliningLinker, countingLinker);
+        factory.setFallbackLinkers();
+        factory.setLinkerDecisionCacheEnabled(true);
+        final DynamicLinker linker = factory.createLinker();
+        for(int i = 0; i < 3; ++i) {
+            final MethodHandle invoker = linker.link(new MonomorphicCallSite(CallSiteDescriptorFactory.create(
+                    MethodHandles.publicLookup(), "dyn:foo", TYPE))).dynamicInvoker();
+            assertEquals("java.lang.String", invoker.invokeExact((Object)""));
+        }
+        assertEquals(3, countingLinker.linkCount);
+        assertEquals(1, decliningLinker.count);
+
+        // Different receiver class asks all linkers again
+        final MethodHandle invoker = linker.link(new MonomorphicCallSite(CallSiteDescriptorFactory.create(
+                MethodHandles.publicLookup(), "dyn:foo", TYPE))).dynamicInvoker();
+        assertEquals("java.lang.Integer", invoker.invokeExact((Object)Integer.valueOf(0)));
+        assertEquals(2, decliningLinker.count);
+    }
+
+    /**
+     * Tests that link costs are recorded for every component linker.
+     */
+    public static void testLinkerCostAccounting() throws Throwable {
+        final DecliningLinker decliningLinker = new DecliningLinker();
+        final CountingLinker countingLinker = new CountingLinker();
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinkers(decliningLinker, countingLinker);
+        factory.setFallbackLinkers();
+        assertNull(factory.createLinker().getLinkerCostAccounting());
+        factory.setLinkerCostAccountingEnabled(true);
+        final DynamicLinker linker = factory.createLinker();
+        for(int i = 0; i < 2; ++i) {
+            linker.link(new MonomorphicCallSite(CallSiteDescriptorFactory.create(MethodHandles.publicLookup(),
+                    "dyn:foo", TYPE)));
+        }
+        // Linking is lazy, so nothing is recorded before the first invocation
+        final LinkerCostAccounting accounting = linker.getLinkerCostAccounting();
+        assertTrue(accounting.getSnapshot().isEmpty());
+        for(int i = 0; i < 2; ++i) {
+            final MethodHandle invoker = linker.link(new MonomorphicCallSite(CallSiteDescriptorFactory.create(
+                    MethodHandles.publicLookup(), "dyn:foo", TYPE))).dynamicInvoker();
+            assertEquals("java.lang.String", invoker.invokeExact((Object)""));
+        }
+        final List<LinkerCost> costs = accounting.getSnapshot();
+        assertEquals(2, costs.size());
+        for(final LinkerCost cost: costs) {
+            assertEquals(2, cost.getRequests());
+            assertTrue(cost.getTime() >= 0);
+            if(cost.getLinker() == decliningLinker) {
+                assertEquals(0, cost.getHits());
+                assertEquals(2, cost.getDeclines());
+            } else {
+                assertSame(countingLinker, cost.getLinker());
+                assertEquals(2, cost.getHits());
+                assertEquals(0, cost.getDeclines());
+            }
+        }
+        accounting.reset();
+        assertTrue(accounting.getSnapshot().isEmpty());
+    }
+
+    private static class BlockingLinker implements GuardingDynamicLinker {
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        private final boolean failFirst;
+
+        BlockingLinker(final boolean failFirst) {
+            this.failFirst = failFirst;
+        }
+
+        @Override
+        public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest, final LinkerServices linkerServices)
+                throws Exception {
+            if(count.incrementAndGet() == 1) {
+                release.await();
+                if(failFirst) {
+                    throw new LinkFailure();
+                }
+            }
+            final MethodType type = linkRequest.getCallSiteDescriptor().getMethodType();
+            return new GuardedInvocation(MethodHandles.dropArguments(MethodHandles.constant(Object.class, "linked"), 0,
+                    type.parameterList()));
+        }
+
+        @SuppressWarnings("serial")
+        static class LinkFailure extends Exception {
+            // Intentionally empty
+        }
+    }
+
+    private static class DecliningLinker implements GuardingDynamicLinker {
+        int count;
+
+        @Override
+        public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest, final LinkerServices linkerServices) {
+            ++count;
+            return null;
+        }
+    }
+
+    private static class CountingLinker implements GuardingDynamicLinker {
+        int linkCount;
+
+        @Override
+        public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest, final LinkerServices linkerServices) {
+            ++linkCount;
+            final MethodType type = linkRequest.getCallSiteDescriptor().getMethodType();
+            final Class<?> clazz = linkRequest.getReceiver().getClass();
+            return new GuardedInvocation(MethodHandles.dropArguments(MethodHandles.constant(Object.class,
+                    clazz.getName()), 0, type.parameterList()), Guards.getClassGuard(clazz));
+        }
+    }
+
+    private static class QueueExecutor implements Executor {
+        final LinkedList<Runnable> tasks = new LinkedList<>();
+
+        @Override
+        public void execute(final Runnable command) {
+            tasks.add(command);
+        }
+    }
+
+    private static class ConstantLinker implements GuardingDynamicLinker {
+        private final Object value;
+
+        ConstantLinker(final Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest, final LinkerServices linkerServices) {
+            final MethodType type = linkRequest.getCallSiteDescriptor().getMethodType();
+            return new GuardedInvocation(MethodHandles.dropArguments(MethodHandles.constant(Object.class, value), 0,
+                    type.parameterList()), Guards.getClassGuard(String.class));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink;
+
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the {@link RelinkSyncBatch}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestRelinkSyncBatch extends TestCase {
+    private static final MethodType TYPE = MethodType.methodType(void.class);
+
+    /**
+     * Tests that the batch is synchronized as soon as it is full.
+     */
+    public static void testFlushOnSize() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            final RelinkSyncBatch batch = new RelinkSyncBatch(3, 60000, scheduler);
+            final MutableCallSite callSite = new MutableCallSite(TYPE);
+            batch.add(callSite);
+            // Adding the same call site again doesn't grow the batch
+            batch.add(callSite);
+            batch.add(new MutableCallSite(TYPE));
+            assertEquals(2, batch.getPendingCount());
+            // The delayed synchronization was scheduled on the provided executor once
+            assertEquals(1, scheduler.getQueue().size());
+            batch.add(new MutableCallSite(TYPE));
+            assertEquals(0, batch.getPendingCount());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that the batch is synchronized after the delay, both on a provided executor and on the shared scheduler.
+     * @throws InterruptedException if interrupted
+     */
+    public static void testFlushOnDelay() throws InterruptedException {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            assertFlushedAfterDelay(new RelinkSyncBatch(100, 10, scheduler));
+        } finally {
+            scheduler.shutdownNow();
+        }
+        assertFlushedAfterDelay(new RelinkSyncBatch(100, 10, null));
+    }
+
+    /**
+     * Tests that call sites are synchronized immediately if the provided executor was shut down, and that it is tried
+     * again for later call sites.
+     */
+    public static void testShutDownScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.shutdown();
+        final RelinkSyncBatch batch = new RelinkSyncBatch(100, 60000, scheduler);
+        batch.add(new MutableCallSite(TYPE));
+        assertEquals(0, batch.getPendingCount());
+        batch.add(new MutableCallSite(TYPE));
+        assertEquals(0, batch.getPendingCount());
+    }
+
+    /**
+     * Tests that an explicit flush synchronizes the pending call sites.
+     */
+    public static void testExplicitFlush() {
+        final RelinkSyncBatch batch = new RelinkSyncBatch(100, 60000, null);
+        batch.add(new MutableCallSite(TYPE));
+        assertEquals(1, batch.getPendingCount());
+        batch.flush();
+        assertEquals(0, batch.getPendingCount());
+    }
+
+    private static void assertFlushedAfterDelay(final RelinkSyncBatch batch) throws InterruptedException {
+        batch.add(new MutableCallSite(TYPE));
+        for(int i = 0; i < 500 && batch.getPendingCount() > 0; ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, batch.getPendingCount());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import junit.framework.TestCase;
+import org.dynalang.dynalink.linker.GuardedInvocation;
+import org.dynalang.dynalink.linker.GuardingDynamicLinker;
+import org.dynalang.dynalink.linker.LinkRequest;
+import org.dynalang.dynalink.linker.LinkerServices;
+import org.dynalang.dynalink.linker.TypeBasedGuardingDynamicLinker;
+
+/**
+ * Tests for the {@link AutoDiscovery}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestAutoDiscovery extends TestCase {
+    /**
+     * Tests that discovered linkers are proxies implementing the interfaces of the linker class, and that the linker
+     * is only instantiated on first use.
+     * @throws Exception if something goes wrong
+     */
+    public static void testLazyLinkers() throws Exception {
+        final File dir = File.createTempFile("dynalink", "");
+        dir.delete();
+        final File services = new File(dir, "META-INF/services");
+        services.mkdirs();
+        final File resource = new File(services, GuardingDynamicLinker.class.getName());
+        try(final OutputStream out = new FileOutputStream(resource)) {
+            out.write(("# test linkers\n" + TestLinker.class.getName() + "\n").getBytes("UTF-8"));
+        }
+        try {
+            final ClassLoader cl = new URLClassLoader(new URL[] { dir.toURI().toURL() },
+                    TestAutoDiscovery.class.getClassLoader());
+            final int instances = TestLinker.instances;
+            final List<GuardingDynamicLinker> linkers = AutoDiscovery.loadLinkers(cl);
+            assertEquals(1, linkers.size());
+            final GuardingDynamicLinker linker = linkers.get(0);
+            assertSame(TestLinker.class, AutoDiscovery.getLinkerClass(linker));
+            assertTrue(linker instanceof TypeBasedGuardingDynamicLinker);
+            assertEquals(instances, TestLinker.instances);
+            assertSame(linker, AutoDiscovery.getInstantiatedLinker(linker));
+            assertTrue(((TypeBasedGuardingDynamicLinker)linker).canLinkType(String.class));
+            assertFalse(((TypeBasedGuardingDynamicLinker)linker).canLinkType(Integer.class));
+            assertEquals(instances + 1, TestLinker.instances);
+            assertTrue(AutoDiscovery.getInstantiatedLinker(linker) instanceof TestLinker);
+            // Linkers are created anew for every discovery
+            assertNotSame(linker, AutoDiscovery.loadLinkers(cl).get(0));
+        } finally {
+            resource.delete();
+            services.delete();
+            services.getParentFile().delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Tests that once a discovered linker has been instantiated, the composite linkers invoke it directly instead of
+     * through its proxy.
+     * @throws Exception if something goes wrong
+     */
+    public static void testCompositesInvokeInstantiatedLinkers() throws Exception {
+        final LinkRequest linkRequest = new LinkRequestImpl(CallSiteDescriptorFactory.create(
+                MethodHandles.publicLookup(), "dyn:foo", MethodType.methodType(Object.class, Object.class)), null, 0,
+                false, "");
+
+        final GuardingDynamicLinker typeBasedLinker = AutoDiscovery.loadLinkers(createDiscoveryClassLoader()).get(0);
+        final CompositeTypeBasedGuardingDynamicLinker typeBasedComposite = new CompositeTypeBasedGuardingDynamicLinker(
+                Arrays.asList((TypeBasedGuardingDynamicLinker)typeBasedLinker,
+                        (TypeBasedGuardingDynamicLinker)typeBasedLinker));
+        typeBasedComposite.getGuardedInvocation(linkRequest, null);
+        assertTrue(TestLinker.directlyInvoked);
+
+        final GuardingDynamicLinker linker = AutoDiscovery.loadLinkers(createDiscoveryClassLoader()).get(0);
+        final CompositeGuardingDynamicLinker composite = new CompositeGuardingDynamicLinker(Arrays.asList(linker,
+                linker));
+        composite.getGuardedInvocation(linkRequest, null);
+        // First invocation instantiated the linker through the proxy
+        assertFalse(TestLinker.directlyInvoked);
+        composite.getGuardedInvocation(linkRequest, null);
+        assertTrue(TestLinker.directlyInvoked);
+    }
+
+    private static ClassLoader createDiscoveryClassLoader() {
+        return new ClassLoader(TestAutoDiscovery.class.getClassLoader()) {
+            @Override
+            protected Enumeration<URL> findResources(final String name) throws IOException {
+                if(name.equals("META-INF/services/" + GuardingDynamicLinker.class.getName())) {
+                    final File resource = File.createTempFile("dynalink", "");
+                    resource.deleteOnExit();
+                    try(final OutputStream out = new FileOutputStream(resource)) {
+                        out.write(TestLinker.class.getName().getBytes("UTF-8"));
+                    }
+                    return Collections.enumeration(Collections.singleton(resource.toURI().toURL()));
+                }
+                return super.findResources(name);
+            }
+        };
+    }
+
+    /**
+     * A linker used for testing discovery.
+     */
+    public static class TestLinker implements TypeBasedGuardingDynamicLinker {
+        static int instances;
+        static boolean directlyInvoked;
+
+        /**
+         * Creates a new test linker.
+         */
+        public TestLinker() {
+            ++instances;
+        }
+
+        @Override
+        public boolean canLinkType(final Class<?> type) {
+            return type == String.class;
+        }
+
+        @Override
+        public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest,
+                final LinkerServices linkerServices) {
+            directlyInvoked = new Throwable().getStackTrace()[1].getClassName().equals(
+                    LinkerServicesImpl.class.getName());
+            return null;
+        }
+    }
+}
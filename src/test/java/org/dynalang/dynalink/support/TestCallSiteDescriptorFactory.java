@@ -0,0 +1,125 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import org.dynalang.dynalink.CallSiteDescriptor;
+
+/**
+ * Tests for the {@link CallSiteDescriptorFactory}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestCallSiteDescriptorFactory extends TestCase {
+    /**
+     * Tests that descriptors with non-public lookups are canonicalized per lookup class.
+     */
+    public static void testCanonicalLookupDescriptors() {
+        final MethodType type = MethodType.methodType(Object.class, Object.class);
+        final CallSiteDescriptor desc = CallSiteDescriptorFactory.create(MethodHandles.lookup(), "dyn:getProp:x", type);
+        assertSame(desc, CallSiteDescriptorFactory.create(MethodHandles.lookup(), "dyn:getProp:x", type));
+        assertSame(desc.changeMethodType(MethodType.methodType(int.class, Object.class)),
+                CallSiteDescriptorFactory.create(MethodHandles.lookup(), "dyn:getProp:x", MethodType.methodType(
+                        int.class, Object.class)));
+        final CallSiteDescriptor otherClassDesc = CallSiteDescriptorFactory.create(MethodHandles.lookup().in(
+                TestNameCodec.class), "dyn:getProp:x", type);
+        assertNotSame(desc, otherClassDesc);
+        assertSame(TestNameCodec.class, otherClassDesc.getLookup().lookupClass());
+    }
+
+    /**
+     * Tests tokenizing of names, including skipping of empty tokens and demangling of tokens after the operator.
+     */
+    public static void testTokenizeName() {
+        final String[] tokens = CallSiteDescriptorFactory.tokenizeName("dyn::getProp:\\=foo\\!bar:");
+        assertEquals(Arrays.asList("dyn", "getProp", "foo:bar"), Arrays.asList(tokens));
+        assertSame("dyn", tokens[0]);
+        assertEquals(0, CallSiteDescriptorFactory.tokenizeName("").length);
+    }
+
+    /**
+     * Tests that creating descriptors reuses the tokens of names that were already tokenized, while the public
+     * tokenizing method keeps returning new arrays.
+     */
+    public static void testTokenizedNameCache() {
+        final String name = "dyn:getProp:tokenizedNameCache:x";
+        final DefaultCallSiteDescriptor desc1 = (DefaultCallSiteDescriptor)CallSiteDescriptorFactory.create(
+                MethodHandles.publicLookup(), name, MethodType.methodType(Object.class, Object.class));
+        final DefaultCallSiteDescriptor desc2 = (DefaultCallSiteDescriptor)CallSiteDescriptorFactory.create(
+                MethodHandles.publicLookup(), name, MethodType.methodType(int.class, Object.class));
+        assertNotSame(desc1, desc2);
+        assertSame(desc1.getTokenizedName(), desc2.getTokenizedName());
+        assertNotSame(CallSiteDescriptorFactory.tokenizeName(name), CallSiteDescriptorFactory.tokenizeName(name));
+    }
+
+    /**
+     * Tests that operators are tokenized into interned tokens, and that the lists are cached.
+     */
+    public static void testTokenizeOperators() {
+        final CallSiteDescriptor desc = CallSiteDescriptorFactory.create(MethodHandles.publicLookup(),
+                "dyn:getProp|getElem||getMethod", MethodType.methodType(Object.class, Object.class, Object.class));
+        final List<String> operators = CallSiteDescriptorFactory.tokenizeOperators(desc);
+        assertEquals(Arrays.asList("getProp", "getElem", "getMethod"), operators);
+        assertSame("getElem", operators.get(1));
+        assertSame(operators, CallSiteDescriptorFactory.tokenizeOperators(desc));
+        try {
+            operators.remove(0);
+            fail();
+        } catch(final UnsupportedOperationException e) {
+            // This is expected
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.dynalang.dynalink.linker.GuardedInvocation;
+import org.dynalang.dynalink.linker.GuardingDynamicLinker;
+import org.dynalang.dynalink.linker.LinkRequest;
+import org.dynalang.dynalink.linker.LinkerServices;
+
+/**
+ * Tests for the {@link CompositeGuardingDynamicLinker}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestCompositeGuardingDynamicLinker extends TestCase {
+    private static final MethodType TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * Tests that a composite linker caching its decisions can be serialized, and that the deserialized linker caches
+     * its decisions too.
+     * @throws Exception if something goes wrong
+     */
+    public static void testSerializeWithDecisionCache() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(final ObjectOutputStream oout = new ObjectOutputStream(out)) {
+            oout.writeObject(new CompositeGuardingDynamicLinker(Arrays.asList(new DecliningLinker(),
+                    new ConstantLinker()), true));
+        }
+        final CompositeGuardingDynamicLinker linker;
+        try(final ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            linker = (CompositeGuardingDynamicLinker)oin.readObject();
+        }
+        final LinkRequest linkRequest = new LinkRequestImpl(CallSiteDescriptorFactory.create(
+                MethodHandles.publicLookup(), "dyn:foo", TYPE), null, 0, false, "");
+        assertNotNull(linker.getGuardedInvocation(linkRequest, null));
+        assertNotNull(linker.getGuardedInvocation(linkRequest, null));
+        // The declining linker is only asked the first time
+        assertEquals(1, DecliningLinker.count);
+    }
+
+    private static class DecliningLinker implements GuardingDynamicLinker, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        static int count;
+
+        @Override
+        public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest, final LinkerServices linkerServices) {
+            ++count;
+            return null;
+        }
+    }
+
+    private static class ConstantLinker implements GuardingDynamicLinker, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest, final LinkerServices linkerServices) {
+            return new GuardedInvocation(MethodHandles.dropArguments(MethodHandles.constant(Object.class, "x"), 0,
+                    TYPE.parameterList()), Guards.getClassGuard(String.class));
+        }
+    }
+}
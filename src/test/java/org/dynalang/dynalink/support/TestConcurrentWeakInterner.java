@@ -0,0 +1,93 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the {@link ConcurrentWeakInterner}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestConcurrentWeakInterner extends TestCase {
+    /**
+     * Tests that equal objects are interned to the same instance.
+     */
+    public static void testIntern() {
+        final ConcurrentWeakInterner<String> interner = new ConcurrentWeakInterner<>();
+        final String foo = new String("foo");
+        assertSame(foo, interner.intern(foo));
+        assertSame(foo, interner.intern(new String("foo")));
+        final String bar = new String("bar");
+        assertSame(bar, interner.intern(bar));
+        assertEquals(2, interner.size());
+    }
+
+    /**
+     * Tests that entries of objects that were garbage collected are expunged.
+     * @throws InterruptedException if interrupted
+     */
+    public static void testExpunge() throws InterruptedException {
+        final ConcurrentWeakInterner<String> interner = new ConcurrentWeakInterner<>();
+        for(int i = 0; i < 100; ++i) {
+            interner.intern(new String("garbage" + i));
+        }
+        final String retained = new String("retained");
+        for(int i = 0; i < 10 && interner.size() > 1; ++i) {
+            System.gc();
+            Thread.sleep(10);
+            assertSame(retained, interner.intern(retained));
+        }
+        assertEquals(1, interner.size());
+        assertSame(retained, interner.intern(new String("retained")));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.lang.ref.WeakReference;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the {@link ConcurrentWeakMap}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestConcurrentWeakMap extends TestCase {
+    /**
+     * Tests that keys are compared by identity.
+     */
+    public static void testIdentityKeys() {
+        final ConcurrentWeakMap<String, Integer> map = new ConcurrentWeakMap<>(true);
+        final String key1 = new String("key");
+        final String key2 = new String("key");
+        assertNull(map.putIfAbsent(key1, 1));
+        assertEquals(Integer.valueOf(1), map.putIfAbsent(key1, 2));
+        assertNull(map.get(key2));
+        assertNull(map.putIfAbsent(key2, 3));
+        assertTrue(map.replace(key1, 1, 4));
+        assertFalse(map.replace(key1, 1, 5));
+        assertEquals(Integer.valueOf(4), map.get(key1));
+        assertEquals(Integer.valueOf(3), map.get(key2));
+        assertEquals(2, map.getLiveEntries().size());
+    }
+
+    /**
+     * Tests that keys are compared with their equals method when the map isn't an identity map.
+     */
+    public static void testEqualKeys() {
+        final ConcurrentWeakMap<String, Integer> map = new ConcurrentWeakMap<>(false);
+        final String key1 = new String("key");
+        final String key2 = new String("key");
+        assertNull(map.putIfAbsent(key1, 1));
+        assertEquals(Integer.valueOf(1), map.get(key2));
+        assertEquals(Integer.valueOf(1), map.putIfAbsent(key2, 2));
+        assertTrue(map.replace(key2, 1, 3));
+        assertEquals(Integer.valueOf(3), map.get(key1));
+        assertEquals(1, map.getLiveEntries().size());
+    }
+
+    /**
+     * Tests that the map doesn't keep its keys reachable, and that it expunges their entries once they're collected.
+     * @throws InterruptedException if interrupted
+     */
+    public static void testKeysNotRetained() throws InterruptedException {
+        final ConcurrentWeakMap<Object, String> map = new ConcurrentWeakMap<>(true);
+        Object key = new Object();
+        final WeakReference<Object> ref = new WeakReference<>(key);
+        map.putIfAbsent(key, "value");
+        key = null;
+        for(int i = 0; i < 100 && (ref.get() != null || map.size() != 0); ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        assertEquals(0, map.size());
+    }
+}
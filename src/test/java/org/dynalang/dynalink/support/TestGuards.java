@@ -0,0 +1,151 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+import org.dynalang.dynalink.DynamicLinkerFactory;
+import org.dynalang.dynalink.MonomorphicCallSite;
+import org.dynalang.dynalink.linker.GuardedInvocation;
+import org.dynalang.dynalink.linker.GuardingDynamicLinker;
+import org.dynalang.dynalink.linker.LinkRequest;
+import org.dynalang.dynalink.linker.LinkerServices;
+
+/**
+ * Tests for the {@link Guards}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestGuards extends TestCase {
+    private static final MethodType TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * Tests that creating a guard that always returns true logs a warning, that the location of the call site being
+     * linked is only logged at fine level, and that nothing is logged when warnings are disabled.
+     * @throws Throwable if something goes wrong
+     */
+    public static void testDegenerateGuardWarning() throws Throwable {
+        final Logger logger = Logger.getLogger(Guards.class.getName());
+        final List<LogRecord> records = new ArrayList<>();
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        final Level level = logger.getLevel();
+        final boolean useParentHandlers = logger.getUseParentHandlers();
+        logger.addHandler(handler);
+        logger.setUseParentHandlers(false);
+        try {
+            logger.setLevel(Level.WARNING);
+            assertEquals("x", link().invokeExact((Object)"a"));
+            assertEquals(1, records.size());
+            final LogRecord record = records.get(0);
+            assertEquals(Level.WARNING, record.getLevel());
+            assertEquals("isOfClassGuardAlwaysTrue", record.getMessage());
+            assertEquals(3, record.getParameters().length);
+
+            records.clear();
+            logger.setLevel(Level.FINE);
+            assertEquals("x", link().invokeExact((Object)"a"));
+            assertEquals(2, records.size());
+            final LogRecord locationRecord = records.get(1);
+            assertEquals(Level.FINE, locationRecord.getLevel());
+            assertEquals("degenerateGuardLocation", locationRecord.getMessage());
+            final StackTraceElement location = (StackTraceElement)locationRecord.getParameters()[0];
+            assertEquals(TestGuards.class.getName(), location.getClassName());
+            assertEquals("testDegenerateGuardWarning", location.getMethodName());
+
+            records.clear();
+            logger.setLevel(Level.SEVERE);
+            assertEquals("x", link().invokeExact((Object)"a"));
+            assertTrue(records.isEmpty());
+        } finally {
+            logger.setLevel(level);
+            logger.setUseParentHandlers(useParentHandlers);
+            logger.removeHandler(handler);
+        }
+    }
+
+    private static MethodHandle link() {
+        final DynamicLinkerFactory factory = new DynamicLinkerFactory();
+        factory.setPrioritizedLinker(new GuardingDynamicLinker() {
+            @Override
+            public GuardedInvocation getGuardedInvocation(final LinkRequest linkRequest,
+                    final LinkerServices linkerServices) {
+                final MethodType type = linkRequest.getCallSiteDescriptor().getMethodType();
+                return new GuardedInvocation(MethodHandles.dropArguments(MethodHandles.constant(Object.class, "x"), 0,
+                        type.parameterList()), Guards.isOfClass(Object.class, type.changeReturnType(boolean.class)));
+            }
+        });
+        factory.setFallbackLinkers();
+        return factory.createLinker().link(new MonomorphicCallSite(CallSiteDescriptorFactory.create(
+                MethodHandles.publicLookup(), "dyn:foo", TYPE))).dynamicInvoker();
+    }
+}
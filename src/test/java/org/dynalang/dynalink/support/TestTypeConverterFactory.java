@@ -0,0 +1,173 @@
+/*
+   Copyright 2009-2013 Attila Szegedi
+
+   Licensed under both the Apache License, Version 2.0 (the "Apache License")
+   and the BSD License (the "BSD License"), with licensee being free to
+   choose either of the two at their discretion.
+
+   You may not use this file except in compliance with either the Apache
+   License or the BSD License.
+
+   If you choose to use this file in compliance with the Apache License, the
+   following notice applies to you:
+
+       You may obtain a copy of the Apache License at
+
+           http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing, software
+       distributed under the License is distributed on an "AS IS" BASIS,
+       WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+       implied. See the License for the specific language governing
+       permissions and limitations under the License.
+
+   If you choose to use this file in compliance with the BSD License, the
+   following notice applies to you:
+
+       Redistribution and use in source and binary forms, with or without
+       modification, are permitted provided that the following conditions are
+       met:
+       * Redistributions of source code must retain the above copyright
+         notice, this list of conditions and the following disclaimer.
+       * Redistributions in binary form must reproduce the above copyright
+         notice, this list of conditions and the following disclaimer in the
+         documentation and/or other materials provided with the distribution.
+       * Neither the name of the copyright holder nor the names of
+         contributors may be used to endorse or promote products derived from
+         this software without specific prior written permission.
+
+       THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+       IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+       TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+       PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL COPYRIGHT HOLDER
+       BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+       CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+       SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+       BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+       WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+       OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+       ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.dynalang.dynalink.support;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
+import java.util.Collections;
+import junit.framework.TestCase;
+import org.dynalang.dynalink.linker.ConversionComparator;
+import org.dynalang.dynalink.linker.ConversionComparator.Comparison;
+import org.dynalang.dynalink.linker.GuardedInvocation;
+import org.dynalang.dynalink.linker.GuardedTypeConversion;
+import org.dynalang.dynalink.linker.GuardingTypeConverterFactory;
+
+/**
+ * Tests for the {@link TypeConverterFactory}.
+ *
+ * @author Attila Szegedi
+ */
+public class TestTypeConverterFactory extends TestCase {
+    /**
+     * Tests that non-cacheable converters are created on every request, unless they have a cache switch point, in
+     * which case they're reused until it's invalidated.
+     * @throws Throwable if the converter fails
+     */
+    public static void testNonCacheableConverters() throws Throwable {
+        final ToStringConverterFactory converters = new ToStringConverterFactory();
+        final TypeConverterFactory factory = new TypeConverterFactory(Collections.singleton(converters), null);
+
+        // Not reusable at all
+        assertEquals("1", factory.getTypeConverter(Integer.class, String.class).invoke(Integer.valueOf(1)));
+        factory.getTypeConverter(Integer.class, String.class);
+        assertEquals(2, converters.count);
+
+        // Reusable until the switch point is invalidated
+        converters.switchPoint = new SwitchPoint();
+        final MethodHandle converter = factory.getTypeConverter(Integer.class, String.class);
+        assertSame(converter, factory.getTypeConverter(Integer.class, String.class));
+        assertTrue(factory.canConvert(Integer.class, String.class));
+        assertEquals(3, converters.count);
+        SwitchPoint.invalidateAll(new SwitchPoint[] { converters.switchPoint });
+        converters.switchPoint = new SwitchPoint();
+        assertEquals("2", factory.getTypeConverter(Integer.class, String.class).invoke(Integer.valueOf(2)));
+        assertEquals(4, converters.count);
+    }
+
+    /**
+     * Tests that adapting the same method handle to the same type returns the same adapted method handle, unless it
+     * incorporates non-cacheable converters.
+     * @throws Throwable if the adapted method handle fails
+     */
+    public static void testAsTypeCache() throws Throwable {
+        final ToStringConverterFactory converters = new ToStringConverterFactory();
+        final TypeConverterFactory factory = new TypeConverterFactory(Collections.singleton(converters), null);
+        final MethodHandle handle = MethodHandles.identity(Object.class);
+        final MethodType type = MethodType.methodType(Object.class, Object.class);
+        assertSame(handle, factory.asType(handle, type));
+
+        final MethodType objToInt = MethodType.methodType(Integer.class, Object.class);
+        final MethodHandle adapted = factory.asType(handle, objToInt);
+        assertSame(adapted, factory.asType(handle, objToInt));
+        assertSame(adapted, factory.asType(handle, MethodType.methodType(Integer.class, Object.class)));
+        assertNotSame(adapted, factory.asType(MethodHandles.filterReturnValue(handle, handle), objToInt));
+        assertEquals(Integer.valueOf(1), (Integer)adapted.invokeExact((Object)Integer.valueOf(1)));
+
+        final MethodHandle stringHandle = MethodHandles.identity(String.class);
+        final MethodType intToString = MethodType.methodType(String.class, Integer.class);
+        final MethodHandle nonCacheable = factory.asType(stringHandle, intToString);
+        assertNotSame(nonCacheable, factory.asType(stringHandle, intToString));
+        assertEquals("1", (String)nonCacheable.invokeExact(Integer.valueOf(1)));
+    }
+
+    /**
+     * Tests that conversion comparators are consulted only once for every combination of types.
+     */
+    public static void testCompareConversionCache() {
+        final CountingComparator comparator = new CountingComparator();
+        final TypeConverterFactory factory = new TypeConverterFactory(Collections.singleton(comparator), null);
+        for(int i = 0; i < 2; ++i) {
+            assertEquals(Comparison.TYPE_1_BETTER, factory.compareConversion(Integer.class, int.class, String.class));
+            assertEquals(Comparison.TYPE_2_BETTER, factory.compareConversion(Integer.class, String.class, long.class));
+            assertEquals(Comparison.INDETERMINATE, factory.compareConversion(Integer.class, long.class, double.class));
+            assertEquals(Comparison.TYPE_1_BETTER, factory.compareConversion(Object.class, int.class, String.class));
+        }
+        assertEquals(4, comparator.count);
+    }
+
+    private static class CountingComparator implements GuardingTypeConverterFactory, ConversionComparator {
+        int count;
+
+        @Override
+        public GuardedTypeConversion convertToType(final Class<?> sourceType, final Class<?> targetType) {
+            return null;
+        }
+
+        @Override
+        public Comparison compareConversion(final Class<?> sourceType, final Class<?> targetType1,
+                final Class<?> targetType2) {
+            ++count;
+            return sourceType == Object.class ? Comparison.TYPE_1_BETTER : Comparison.INDETERMINATE;
+        }
+    }
+
+    private static class ToStringConverterFactory implements GuardingTypeConverterFactory {
+        int count;
+        SwitchPoint switchPoint;
+
+        @Override
+        public GuardedTypeConversion convertToType(final Class<?> sourceType, final Class<?> targetType)
+                throws Exception {
+            if(targetType != String.class) {
+                return null;
+            }
+            ++count;
+            final GuardedInvocation invocation = new GuardedInvocation(MethodHandles.publicLookup().findVirtual(
+                    Object.class, "toString", MethodType.methodType(String.class)).asType(
+                            MethodType.methodType(String.class, sourceType)));
+            return switchPoint == null ? new GuardedTypeConversion(invocation, false) :
+                new GuardedTypeConversion(invocation, switchPoint);
+        }
+    }
+}